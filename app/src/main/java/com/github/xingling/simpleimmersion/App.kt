@@ -0,0 +1,13 @@
+package com.github.xingling.simpleimmersion
+
+import android.app.Application
+import com.github.xingling.immersionlibrary.SimpleImmersion
+
+class App : Application() {
+
+    override fun onCreate() {
+        super.onCreate()
+        SimpleImmersion.prewarm(this)
+        SimpleImmersion.addIndex(AppImmersionIndex())
+    }
+}
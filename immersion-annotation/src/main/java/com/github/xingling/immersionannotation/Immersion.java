@@ -0,0 +1,59 @@
+package com.github.xingling.immersionannotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 在编译期声明Activity的沉浸式配置，由immersion-compiler生成对应的Xxx_Immersion类和索引，运行时不使用反射
+ * Compile-time immersion configuration of an Activity.
+ * <p>
+ * 颜色和标题栏使用资源id，未设置的属性保持SimpleImmersion的默认值。
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Immersion {
+
+    /**
+     * 状态栏颜色，R.color中的资源id，0为透明
+     */
+    int statusBarColor() default 0;
+
+    /**
+     * 导航栏颜色，R.color中的资源id，0为默认的黑色
+     */
+    int navigationBarColor() default 0;
+
+    /**
+     * 状态栏深色字体
+     */
+    boolean darkFont() default false;
+
+    /**
+     * 不支持深色字体的系统上状态栏的透明度，0到1
+     */
+    float statusBarAlpha() default 0f;
+
+    /**
+     * 有导航栏的情况，全屏显示
+     */
+    boolean fullScreen() default false;
+
+    /**
+     * 解决标题栏与状态栏重叠问题，不能与titleBar同时使用
+     */
+    boolean fitsSystemWindows() default false;
+
+    /**
+     * 标题栏，R.id中的资源id，0为没有标题栏
+     */
+    int titleBar() default 0;
+
+    /**
+     * 解决软键盘与底部输入框冲突问题
+     */
+    boolean keyboardEnable() default false;
+}
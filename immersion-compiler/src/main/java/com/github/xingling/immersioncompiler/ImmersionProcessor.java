@@ -0,0 +1,247 @@
+package com.github.xingling.immersioncompiler;
+
+import com.github.xingling.immersionannotation.Immersion;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+
+/**
+ * 处理{@link Immersion}注解，为每个Activity生成Xxx_Immersion类，并在设置了immersionIndex参数时生成索引类
+ * Annotation processor generating per-Activity apply routines and an ImmersionIndex.
+ * <p>
+ * 配置错误在编译期报错：注解不在Activity子类上、Activity是abstract或private、透明度超出0到1、
+ * fitsSystemWindows和titleBar同时使用。
+ * <p>
+ * 生成的apply()与手写的SimpleImmersion链式调用相同，只写出设置过的属性；颜色和标题栏的资源id在编译期还不是最终的值
+ * （library模块的R不是常量），仍然在运行时解析。省掉的是运行时查找配置的反射，而不是链式调用本身。
+ */
+public class ImmersionProcessor extends AbstractProcessor {
+
+    /**
+     * 索引类的完整类名，例如-AimmersionIndex=com.example.MyImmersionIndex
+     */
+    public static final String OPTION_INDEX = "immersionIndex";
+
+    static final String ACTIVITY = "android.app.Activity";
+    static final String LIBRARY_PACKAGE = "com.github.xingling.immersionlibrary";
+    static final String SUFFIX = "_Immersion";
+
+    private Filer mFiler;
+    private Messager mMessager;
+    private Elements mElements;
+    private Types mTypes;
+    private final List<ImmersionClass> mClasses = new ArrayList<>();
+    private boolean mIndexWritten;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        mFiler = processingEnv.getFiler();
+        mMessager = processingEnv.getMessager();
+        mElements = processingEnv.getElementUtils();
+        mTypes = processingEnv.getTypeUtils();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(Immersion.class.getCanonicalName());
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        return Collections.singleton(OPTION_INDEX);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<? extends Element> elements = roundEnv.getElementsAnnotatedWith(Immersion.class);
+        for (Element element : elements) {
+            ImmersionClass immersionClass = parse(element);
+            if (immersionClass != null) {
+                writeClass(immersionClass);
+                mClasses.add(immersionClass);
+            }
+        }
+        //生成的Xxx_Immersion会引起新的一轮处理，在没有新注解的那一轮生成索引，避免在最后一轮生成源文件
+        if (elements.isEmpty() && !mIndexWritten && !mClasses.isEmpty()) {
+            mIndexWritten = true;
+            String index = processingEnv.getOptions().get(OPTION_INDEX);
+            if (index != null)
+                writeIndex(index);
+            else
+                mMessager.printMessage(Diagnostic.Kind.NOTE, "没有设置" + OPTION_INDEX
+                        + "参数，不生成索引，可以直接调用Xxx" + SUFFIX + ".apply(activity)");
+        }
+        return true;
+    }
+
+    /**
+     * 检查注解的位置和取值，有错误时返回null
+     */
+    private ImmersionClass parse(Element element) {
+        if (element.getKind() != ElementKind.CLASS) {
+            error(element, "@Immersion只能用在Activity上");
+            return null;
+        }
+        TypeElement type = (TypeElement) element;
+        TypeElement activity = mElements.getTypeElement(ACTIVITY);
+        if (activity == null || !mTypes.isSubtype(type.asType(), activity.asType())) {
+            error(element, "@Immersion只能用在Activity上: " + type.getQualifiedName());
+            return null;
+        }
+        Set<Modifier> modifiers = type.getModifiers();
+        if (modifiers.contains(Modifier.ABSTRACT) || modifiers.contains(Modifier.PRIVATE)) {
+            error(element, "@Immersion不能用在abstract或private的Activity上: " + type.getQualifiedName());
+            return null;
+        }
+        for (Element enclosing = type.getEnclosingElement(); enclosing.getKind() != ElementKind.PACKAGE;
+             enclosing = enclosing.getEnclosingElement()) {
+            if (enclosing.getModifiers().contains(Modifier.PRIVATE)) {
+                error(element, "@Immersion不能用在private类的内部类上: " + type.getQualifiedName());
+                return null;
+            }
+        }
+        Immersion immersion = type.getAnnotation(Immersion.class);
+        if (immersion.statusBarAlpha() < 0f || immersion.statusBarAlpha() > 1f) {
+            error(element, "statusBarAlpha必须在0到1之间: " + immersion.statusBarAlpha());
+            return null;
+        }
+        if (immersion.fitsSystemWindows() && immersion.titleBar() != 0) {
+            error(element, "fitsSystemWindows和titleBar不能同时使用");
+            return null;
+        }
+        String packageName = mElements.getPackageOf(type).getQualifiedName().toString();
+        String binaryName = mElements.getBinaryName(type).toString();
+        return new ImmersionClass(packageName, binaryName, type.asType(), immersion);
+    }
+
+    /**
+     * 生成Xxx_Immersion.apply()，内容是注解对应的builder调用，没有设置的属性不生成
+     */
+    private void writeClass(ImmersionClass immersionClass) {
+        Immersion immersion = immersionClass.immersion;
+        StringBuilder builder = new StringBuilder();
+        if (!immersionClass.packageName.isEmpty())
+            builder.append("package ").append(immersionClass.packageName).append(";\n\n");
+        builder.append("import android.app.Activity;\n\n")
+                .append("import ").append(LIBRARY_PACKAGE).append(".SimpleImmersion;\n\n")
+                .append("/**\n * 由immersion-compiler根据@Immersion生成，不要修改\n */\n")
+                .append("public final class ").append(immersionClass.generatedSimpleName).append(" {\n\n")
+                .append("    private ").append(immersionClass.generatedSimpleName).append("() {\n    }\n\n")
+                .append("    public static void apply(Activity activity) {\n")
+                .append("        SimpleImmersion.with(activity)");
+        if (immersion.statusBarColor() != 0)
+            builder.append("\n                .statusBarColor(").append(hex(immersion.statusBarColor())).append(")");
+        if (immersion.navigationBarColor() != 0)
+            builder.append("\n                .navigationBarColor(").append(hex(immersion.navigationBarColor())).append(")");
+        if (immersion.darkFont() || immersion.statusBarAlpha() != 0f)
+            builder.append("\n                .statusBarDarkFont(").append(immersion.darkFont()).append(", ")
+                    .append(immersion.statusBarAlpha()).append("f)");
+        if (immersion.fullScreen())
+            builder.append("\n                .fullScreen(true)");
+        if (immersion.fitsSystemWindows())
+            builder.append("\n                .fitsSystemWindows(true)");
+        if (immersion.titleBar() != 0)
+            builder.append("\n                .titleBar(activity.findViewById(").append(hex(immersion.titleBar())).append("))");
+        if (immersion.keyboardEnable())
+            builder.append("\n                .keyboardEnable(true)");
+        builder.append("\n                .init();\n    }\n}\n");
+        write(immersionClass.generatedName(), builder, immersionClass.type);
+    }
+
+    /**
+     * 索引按Activity的类名分支，查找只需要一次字符串switch
+     */
+    private void writeIndex(String index) {
+        int dot = index.lastIndexOf('.');
+        StringBuilder builder = new StringBuilder();
+        if (dot > 0)
+            builder.append("package ").append(index, 0, dot).append(";\n\n");
+        builder.append("import android.app.Activity;\n\n")
+                .append("import ").append(LIBRARY_PACKAGE).append(".ImmersionIndex;\n\n")
+                .append("/**\n * 由immersion-compiler根据@Immersion生成，不要修改\n */\n")
+                .append("public final class ").append(index.substring(dot + 1)).append(" implements ImmersionIndex {\n\n")
+                .append("    @Override\n")
+                .append("    public boolean apply(Activity activity) {\n")
+                .append("        switch (activity.getClass().getName()) {\n");
+        for (ImmersionClass immersionClass : mClasses) {
+            builder.append("            case \"").append(immersionClass.binaryName).append("\":\n")
+                    .append("                ").append(immersionClass.generatedName()).append(".apply(activity);\n")
+                    .append("                return true;\n");
+        }
+        builder.append("            default:\n")
+                .append("                return false;\n")
+                .append("        }\n    }\n}\n");
+        write(index, builder, null);
+    }
+
+    private void write(String name, CharSequence source, TypeMirror origin) {
+        try {
+            Element[] origins = origin != null ? new Element[]{mTypes.asElement(origin)} : new Element[0];
+            Writer writer = mFiler.createSourceFile(name, origins).openWriter();
+            try {
+                writer.write(source.toString());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            mMessager.printMessage(Diagnostic.Kind.ERROR, "无法生成" + name + ": " + e.getMessage());
+        }
+    }
+
+    private void error(Element element, String message) {
+        mMessager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static String hex(int id) {
+        return "0x" + Integer.toHexString(id);
+    }
+
+    /**
+     * 一个使用了@Immersion的Activity
+     */
+    private static final class ImmersionClass {
+        final String packageName;
+        final String binaryName;
+        final String generatedSimpleName;
+        final TypeMirror type;
+        final Immersion immersion;
+
+        ImmersionClass(String packageName, String binaryName, TypeMirror type, Immersion immersion) {
+            this.packageName = packageName;
+            this.binaryName = binaryName;
+            String simpleName = packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1);
+            this.generatedSimpleName = simpleName.replace('$', '_') + SUFFIX;
+            this.type = type;
+            this.immersion = immersion;
+        }
+
+        String generatedName() {
+            return packageName.isEmpty() ? generatedSimpleName : packageName + "." + generatedSimpleName;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.github.xingling.immersioncompiler;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 用javac和ImmersionProcessor编译示例Activity，检查生成的源码和编译错误
+ * Compiles fixture Activities with {@link ImmersionProcessor} and checks the output.
+ * <p>
+ * android和immersionlibrary只提供编译需要的最小存根，生成的源码需要与存根一起通过编译。
+ */
+public class ImmersionProcessorTest {
+
+    private static final String[] STUBS = {
+            "android.app.Activity",
+            "package android.app;\n"
+                    + "public class Activity {\n"
+                    + "    public android.view.View findViewById(int id) { return null; }\n"
+                    + "}\n",
+            "android.view.View",
+            "package android.view;\n"
+                    + "public class View {}\n",
+            "com.github.xingling.immersionlibrary.ImmersionIndex",
+            "package com.github.xingling.immersionlibrary;\n"
+                    + "public interface ImmersionIndex {\n"
+                    + "    boolean apply(android.app.Activity activity);\n"
+                    + "}\n",
+            "com.github.xingling.immersionlibrary.SimpleImmersion",
+            "package com.github.xingling.immersionlibrary;\n"
+                    + "import android.app.Activity;\n"
+                    + "import android.view.View;\n"
+                    + "public class SimpleImmersion {\n"
+                    + "    public static SimpleImmersion with(Activity activity) { return new SimpleImmersion(); }\n"
+                    + "    public SimpleImmersion statusBarColor(int color) { return this; }\n"
+                    + "    public SimpleImmersion navigationBarColor(int color) { return this; }\n"
+                    + "    public SimpleImmersion statusBarDarkFont(boolean darkFont, float alpha) { return this; }\n"
+                    + "    public SimpleImmersion fullScreen(boolean fullScreen) { return this; }\n"
+                    + "    public SimpleImmersion fitsSystemWindows(boolean fits) { return this; }\n"
+                    + "    public SimpleImmersion titleBar(View view) { return this; }\n"
+                    + "    public SimpleImmersion keyboardEnable(boolean enable) { return this; }\n"
+                    + "    public void init() {}\n"
+                    + "}\n",
+    };
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void generatesBuilderChainAndIndex() throws IOException {
+        Result result = compile(Collections.singletonList("-AimmersionIndex=com.example.AppImmersionIndex"),
+                "com.example.MainActivity",
+                "package com.example;\n"
+                        + "import com.github.xingling.immersionannotation.Immersion;\n"
+                        + "@Immersion(statusBarColor = 0x7f050001, darkFont = true, statusBarAlpha = 0.2f,\n"
+                        + "        titleBar = 0x7f080002, keyboardEnable = true)\n"
+                        + "public class MainActivity extends android.app.Activity {\n"
+                        + "    @Immersion(fullScreen = true)\n"
+                        + "    public static class Inner extends android.app.Activity {}\n"
+                        + "}\n");
+        assertTrue(result.errors.toString(), result.success);
+
+        String main = result.generated("com/example/MainActivity_Immersion.java");
+        assertTrue(main, main.contains("SimpleImmersion.with(activity)\n"
+                + "                .statusBarColor(0x7f050001)\n"
+                + "                .statusBarDarkFont(true, 0.2f)\n"
+                + "                .titleBar(activity.findViewById(0x7f080002))\n"
+                + "                .keyboardEnable(true)\n"
+                + "                .init();"));
+        //没有设置的属性不生成
+        assertFalse(main, main.contains("navigationBarColor"));
+        assertFalse(main, main.contains("fitsSystemWindows"));
+
+        String inner = result.generated("com/example/MainActivity_Inner_Immersion.java");
+        assertTrue(inner, inner.contains("SimpleImmersion.with(activity)\n"
+                + "                .fullScreen(true)\n"
+                + "                .init();"));
+
+        String index = result.generated("com/example/AppImmersionIndex.java");
+        assertTrue(index, index.contains("public final class AppImmersionIndex implements ImmersionIndex"));
+        assertTrue(index, index.contains("case \"com.example.MainActivity\":\n"
+                + "                com.example.MainActivity_Immersion.apply(activity);"));
+        assertTrue(index, index.contains("case \"com.example.MainActivity$Inner\":\n"
+                + "                com.example.MainActivity_Inner_Immersion.apply(activity);"));
+    }
+
+    @Test
+    public void withoutIndexOptionOnlyGeneratesClasses() throws IOException {
+        Result result = compile(Collections.<String>emptyList(), "com.example.MainActivity",
+                "package com.example;\n"
+                        + "@com.github.xingling.immersionannotation.Immersion\n"
+                        + "public class MainActivity extends android.app.Activity {}\n");
+        assertTrue(result.errors.toString(), result.success);
+        assertTrue(new File(result.sourceDir, "com/example/MainActivity_Immersion.java").exists());
+        assertFalse(new File(result.sourceDir, "com/example/AppImmersionIndex.java").exists());
+    }
+
+    @Test
+    public void notAnActivity() throws IOException {
+        assertError("@Immersion只能用在Activity上: com.example.Plain",
+                "package com.example;\n"
+                        + "@com.github.xingling.immersionannotation.Immersion\n"
+                        + "public class Plain {}\n");
+    }
+
+    @Test
+    public void abstractActivity() throws IOException {
+        assertError("@Immersion不能用在abstract或private的Activity上: com.example.Plain",
+                "package com.example;\n"
+                        + "@com.github.xingling.immersionannotation.Immersion\n"
+                        + "public abstract class Plain extends android.app.Activity {}\n");
+    }
+
+    @Test
+    public void privateActivity() throws IOException {
+        assertError("@Immersion不能用在abstract或private的Activity上: com.example.Plain.Inner",
+                "package com.example;\n"
+                        + "public class Plain {\n"
+                        + "    @com.github.xingling.immersionannotation.Immersion\n"
+                        + "    private static class Inner extends android.app.Activity {}\n"
+                        + "}\n");
+    }
+
+    @Test
+    public void alphaOutOfRange() throws IOException {
+        assertError("statusBarAlpha必须在0到1之间: 1.5",
+                "package com.example;\n"
+                        + "@com.github.xingling.immersionannotation.Immersion(statusBarAlpha = 1.5f)\n"
+                        + "public class Plain extends android.app.Activity {}\n");
+    }
+
+    @Test
+    public void fitsSystemWindowsWithTitleBar() throws IOException {
+        assertError("fitsSystemWindows和titleBar不能同时使用",
+                "package com.example;\n"
+                        + "@com.github.xingling.immersionannotation.Immersion(fitsSystemWindows = true, titleBar = 1)\n"
+                        + "public class Plain extends android.app.Activity {}\n");
+    }
+
+    private void assertError(String message, String source) throws IOException {
+        Result result = compile(Collections.<String>emptyList(), "com.example.Plain", source);
+        assertFalse(result.success);
+        assertEquals(Collections.singletonList(message), result.errors);
+        assertFalse(new File(result.sourceDir, "com/example/Plain_Immersion.java").exists());
+    }
+
+    private Result compile(List<String> options, String name, String source) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, Locale.ROOT,
+                Charset.forName("UTF-8"));
+        File classDir = mFolder.newFolder();
+        File sourceDir = mFolder.newFolder();
+        fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(classDir));
+        fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singletonList(sourceDir));
+        List<JavaFileObject> sources = new ArrayList<>();
+        for (int i = 0; i < STUBS.length; i += 2) {
+            sources.add(new Source(STUBS[i], STUBS[i + 1]));
+        }
+        sources.add(new Source(name, source));
+        List<String> arguments = new ArrayList<>(options);
+        arguments.addAll(Arrays.asList("-classpath", System.getProperty("java.class.path")));
+        JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, arguments, null, sources);
+        task.setProcessors(Collections.singletonList(new ImmersionProcessor()));
+        boolean success = task.call();
+        fileManager.close();
+        List<String> errors = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                errors.add(diagnostic.getMessage(Locale.ROOT));
+        }
+        return new Result(success, errors, sourceDir);
+    }
+
+    private static final class Result {
+        final boolean success;
+        final List<String> errors;
+        final File sourceDir;
+
+        Result(boolean success, List<String> errors, File sourceDir) {
+            this.success = success;
+            this.errors = errors;
+            this.sourceDir = sourceDir;
+        }
+
+        String generated(String path) throws IOException {
+            return new String(Files.readAllBytes(new File(sourceDir, path).toPath()), "UTF-8");
+        }
+    }
+
+    private static final class Source extends SimpleJavaFileObject {
+        private final String mSource;
+
+        Source(String name, String source) {
+            super(URI.create("string:///" + name.replace('.', '/') + Kind.SOURCE.extension), Kind.SOURCE);
+            mSource = source;
+        }
+
+        @Override
+        public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+            return mSource;
+        }
+    }
+}
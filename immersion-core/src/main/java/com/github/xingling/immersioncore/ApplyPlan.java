@@ -0,0 +1,203 @@
+package com.github.xingling.immersioncore;
+
+/**
+ * 一次沉浸式设置需要执行的全部修改，由{@link ImmersionPlanner}生成，创建后不可修改
+ * Immutable apply plan executed by the Android module.
+ * <p>
+ * window flag常量与android.view.WindowManager.LayoutParams中的同名常量取值相同，
+ * 假状态栏和假导航栏的尺寸中-1表示MATCH_PARENT。
+ */
+public final class ApplyPlan {
+
+    /**
+     * 4.4以下，不修改window和systemUiVisibility，只处理厂商字体颜色
+     */
+    public static final int MODE_NONE = 0;
+    /**
+     * 4.4和emui3.1，透明系统栏加假状态栏和假导航栏
+     */
+    public static final int MODE_KITKAT = 1;
+    /**
+     * 5.0以上，直接设置系统栏颜色
+     */
+    public static final int MODE_LOLLIPOP = 2;
+
+    public static final int FLAG_TRANSLUCENT_STATUS = 0x04000000;
+    public static final int FLAG_TRANSLUCENT_NAVIGATION = 0x08000000;
+    public static final int FLAG_DRAWS_SYSTEM_BAR_BACKGROUNDS = 0x80000000;
+
+    public static final int MATCH_PARENT = -1;
+
+    public static final int FLYME_NONE = 0;
+    public static final int FLYME_COLOR = 1;
+    public static final int FLYME_DARK_FONT = 2;
+
+    int mode;
+    int addFlags;
+    int clearFlags;
+    int systemUiVisibility;
+    boolean setStatusBarColor;
+    int statusBarColor;
+    boolean setNavigationBarColor;
+    int navigationBarColor;
+    boolean statusBarView;
+    int statusBarViewColor;
+    int statusBarViewHeight;
+    boolean navigationBarView;
+    int navigationBarViewColor;
+    int navigationBarViewWidth;
+    int navigationBarViewHeight;
+    boolean navigationBarViewAtBottom;
+    boolean systemWindows;
+    boolean applyPadding;
+    int paddingLeft;
+    int paddingTop;
+    int paddingRight;
+    int paddingBottom;
+    boolean miuiDarkFont;
+    boolean applyMiuiDarkFont;
+    int flymeAction;
+    int flymeFontColor;
+    boolean flymeDarkFont;
+
+    ApplyPlan() {
+    }
+
+    public int getMode() {
+        return mode;
+    }
+
+    /**
+     * 需要添加的window flag
+     */
+    public int getAddFlags() {
+        return addFlags;
+    }
+
+    /**
+     * 需要清除的window flag
+     */
+    public int getClearFlags() {
+        return clearFlags;
+    }
+
+    /**
+     * MODE_NONE时为0，不需要设置
+     */
+    public int getSystemUiVisibility() {
+        return systemUiVisibility;
+    }
+
+    public boolean isSetStatusBarColor() {
+        return setStatusBarColor;
+    }
+
+    public int getStatusBarColor() {
+        return statusBarColor;
+    }
+
+    public boolean isSetNavigationBarColor() {
+        return setNavigationBarColor;
+    }
+
+    public int getNavigationBarColor() {
+        return navigationBarColor;
+    }
+
+    /**
+     * 是否需要假状态栏，宽度总是MATCH_PARENT，位于顶部
+     */
+    public boolean hasStatusBarView() {
+        return statusBarView;
+    }
+
+    public int getStatusBarViewColor() {
+        return statusBarViewColor;
+    }
+
+    public int getStatusBarViewHeight() {
+        return statusBarViewHeight;
+    }
+
+    /**
+     * 是否需要假导航栏
+     */
+    public boolean hasNavigationBarView() {
+        return navigationBarView;
+    }
+
+    public int getNavigationBarViewColor() {
+        return navigationBarViewColor;
+    }
+
+    public int getNavigationBarViewWidth() {
+        return navigationBarViewWidth;
+    }
+
+    public int getNavigationBarViewHeight() {
+        return navigationBarViewHeight;
+    }
+
+    /**
+     * 假导航栏位于底部，否则位于右侧
+     */
+    public boolean isNavigationBarViewAtBottom() {
+        return navigationBarViewAtBottom;
+    }
+
+    /**
+     * 布局是否使用了fitsSystemWindows属性，软键盘处理需要用到
+     */
+    public boolean isSystemWindows() {
+        return systemWindows;
+    }
+
+    /**
+     * 是否需要设置contentView的padding
+     */
+    public boolean isApplyPadding() {
+        return applyPadding;
+    }
+
+    public int getPaddingLeft() {
+        return paddingLeft;
+    }
+
+    public int getPaddingTop() {
+        return paddingTop;
+    }
+
+    public int getPaddingRight() {
+        return paddingRight;
+    }
+
+    public int getPaddingBottom() {
+        return paddingBottom;
+    }
+
+    /**
+     * 是否需要设置miui状态栏字体颜色
+     */
+    public boolean isApplyMiuiDarkFont() {
+        return applyMiuiDarkFont;
+    }
+
+    public boolean isMiuiDarkFont() {
+        return miuiDarkFont;
+    }
+
+    /**
+     * flymeOS状态栏字体的处理方式，FLYME_COLOR时使用getFlymeFontColor()，FLYME_DARK_FONT时使用isFlymeDarkFont()
+     */
+    public int getFlymeAction() {
+        return flymeAction;
+    }
+
+    public int getFlymeFontColor() {
+        return flymeFontColor;
+    }
+
+    public boolean isFlymeDarkFont() {
+        return flymeDarkFont;
+    }
+}
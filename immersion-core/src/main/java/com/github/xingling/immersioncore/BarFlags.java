@@ -0,0 +1,76 @@
+package com.github.xingling.immersioncore;
+
+/**
+ * systemUiVisibility的计算，不依赖任何android类
+ * System UI visibility flag computation.
+ * <p>
+ * 常量与android.view.View中的同名常量取值相同。
+ */
+public final class BarFlags {
+
+    public static final int SYSTEM_UI_FLAG_VISIBLE = 0;
+    public static final int SYSTEM_UI_FLAG_HIDE_NAVIGATION = 0x00000002;
+    public static final int INVISIBLE = 0x00000004;
+    public static final int SYSTEM_UI_FLAG_LAYOUT_STABLE = 0x00000100;
+    public static final int SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION = 0x00000200;
+    public static final int SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN = 0x00000400;
+    public static final int SYSTEM_UI_FLAG_IMMERSIVE_STICKY = 0x00001000;
+    public static final int SYSTEM_UI_FLAG_LIGHT_STATUS_BAR = 0x00002000;
+
+    /**
+     * hideBar的参数，与immersionlibrary中的BarHide一一对应
+     */
+    public static final int SHOW_BAR = 0;
+    public static final int HIDE_STATUS_BAR = 1;
+    public static final int HIDE_NAVIGATION_BAR = 2;
+    public static final int HIDE_BAR = 3;
+
+    private BarFlags() {
+    }
+
+    /**
+     * 5.0以上的布局flag
+     */
+    public static int aboveLollipop(int uiFlags, boolean fullScreen, boolean navigationBarEnable) {
+        uiFlags |= SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN;  //Activity全屏显示，但状态栏不会被隐藏覆盖，状态栏依然可见，Activity顶端布局部分会被状态栏遮住。
+        if (fullScreen && navigationBarEnable) {
+            uiFlags |= SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION; //Activity全屏显示，但导航栏不会被隐藏覆盖，导航栏依然可见，Activity底部布局部分会被导航栏遮住。
+        }
+        return uiFlags;
+    }
+
+    /**
+     * 6.0以上状态栏深色字体
+     */
+    public static int darkFont(int uiFlags, boolean aboveM, boolean darkFont) {
+        if (aboveM && darkFont) {
+            return uiFlags | SYSTEM_UI_FLAG_LIGHT_STATUS_BAR;
+        } else {
+            return uiFlags;
+        }
+    }
+
+    /**
+     * 隐藏或显示状态栏和导航栏
+     */
+    public static int hideBar(int uiFlags, int barHide) {
+        switch (barHide) {
+            case HIDE_BAR:
+                uiFlags |= SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
+                        | SYSTEM_UI_FLAG_HIDE_NAVIGATION
+                        | INVISIBLE;
+                break;
+            case HIDE_STATUS_BAR:
+                uiFlags |= SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN | INVISIBLE;
+                break;
+            case HIDE_NAVIGATION_BAR:
+                uiFlags |= SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
+                        | SYSTEM_UI_FLAG_HIDE_NAVIGATION;
+                break;
+            case SHOW_BAR:
+                uiFlags |= SYSTEM_UI_FLAG_VISIBLE;
+                break;
+        }
+        return uiFlags;
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.xingling.immersioncore;
+
+/**
+ * 颜色计算，不依赖任何android类
+ * Color math used by the bar and transform view colors.
+ */
+public final class ColorMath {
+
+    private ColorMath() {
+    }
+
+    /**
+     * 按比例混合两个ARGB颜色，与ColorUtils.blendARGB结果一致
+     *
+     * @param color1 起始颜色
+     * @param color2 目标颜色
+     * @param ratio  0为color1，1为color2
+     * @return the int
+     */
+    public static int blendARGB(int color1, int color2, float ratio) {
+        float inverseRatio = 1 - ratio;
+        float a = (color1 >>> 24) * inverseRatio + (color2 >>> 24) * ratio;
+        float r = ((color1 >> 16) & 0xFF) * inverseRatio + ((color2 >> 16) & 0xFF) * ratio;
+        float g = ((color1 >> 8) & 0xFF) * inverseRatio + ((color2 >> 8) & 0xFF) * ratio;
+        float b = (color1 & 0xFF) * inverseRatio + (color2 & 0xFF) * ratio;
+        return ((int) a << 24) | ((int) r << 16) | ((int) g << 8) | (int) b;
+    }
+
+    /**
+     * 颜色转换成灰度值
+     *
+     * @param rgb 颜色
+     * @return 灰度值
+     */
+    public static int toGrey(int rgb) {
+        int blue = rgb & 0x000000FF;
+        int green = (rgb & 0x0000FF00) >> 8;
+        int red = (rgb & 0x00FF0000) >> 16;
+        return (red * 38 + green * 75 + blue * 15) >> 7;
+    }
+
+    /**
+     * 批量计算一组颜色的平均灰度值，不分配内存，按透明度加权，完全透明的像素不计入
+     *
+     * @param pixels 颜色数组
+     * @param offset 起始位置
+     * @param count  个数
+     * @return 平均灰度值，没有不透明像素时返回-1
+     */
+    public static int averageGrey(int[] pixels, int offset, int count) {
+        long greySum = 0;
+        long alphaSum = 0;
+        for (int i = offset, end = offset + count; i < end; i++) {
+            int pixel = pixels[i];
+            int alpha = pixel >>> 24;
+            greySum += toGrey(pixel) * alpha;
+            alphaSum += alpha;
+        }
+        return alphaSum == 0 ? -1 : (int) (greySum / alphaSum);
+    }
+
+    /**
+     * 批量计算一组颜色每个通道的平均值，每隔step个取一个，不分配内存，按透明度加权，完全透明的像素不计入
+     *
+     * @param pixels 颜色数组
+     * @param offset 起始位置
+     * @param count  个数
+     * @param step   间隔，大于0
+     * @param sums   累加结果，依次为alpha、red、green、blue的加权和，调用方复用
+     */
+    public static void accumulateColor(int[] pixels, int offset, int count, int step, long[] sums) {
+        for (int i = offset, end = offset + count; i < end; i += step) {
+            int pixel = pixels[i];
+            int alpha = pixel >>> 24;
+            sums[0] += alpha;
+            sums[1] += ((pixel >> 16) & 0xFF) * alpha;
+            sums[2] += ((pixel >> 8) & 0xFF) * alpha;
+            sums[3] += (pixel & 0xFF) * alpha;
+        }
+    }
+
+    /**
+     * 由accumulateColor()的累加结果得到不透明的平均颜色
+     *
+     * @param sums     累加结果
+     * @param fallback 没有不透明像素时返回的颜色
+     * @return 平均颜色
+     */
+    public static int averageColor(long[] sums, int fallback) {
+        long alpha = sums[0];
+        if (alpha == 0)
+            return fallback;
+        return 0xFF000000 | (int) (sums[1] / alpha) << 16 | (int) (sums[2] / alpha) << 8 | (int) (sums[3] / alpha);
+    }
+
+    /**
+     * 判断颜色是否偏黑色
+     *
+     * @param color 颜色
+     * @param level 级别
+     * @return boolean
+     */
+    public static boolean isBlackColor(int color, int level) {
+        return toGrey(color) < level;
+    }
+}
@@ -0,0 +1,147 @@
+package com.github.xingling.immersioncore;
+
+/**
+ * 根据基本类型的输入计算沉浸式设置，不依赖任何android类
+ * Pure function from {@link PlanInput} to {@link ApplyPlan}.
+ * <p>
+ * android模块只负责读取输入和执行计划，所有分支判断都在这里，可以在普通JVM上穷举测试。
+ */
+public final class ImmersionPlanner {
+
+    public static final int KITKAT = 19;
+    public static final int LOLLIPOP = 21;
+    public static final int M = 23;
+
+    private ImmersionPlanner() {
+    }
+
+    /**
+     * 是否使用5.0以上的处理方式，emui3.1按4.4处理
+     */
+    public static boolean isAboveLollipop(int sdkInt, boolean emui3_1) {
+        return sdkInt >= LOLLIPOP && !emui3_1;
+    }
+
+    /**
+     * 生成计划
+     *
+     * @param input 输入，生成过程中不会被修改
+     * @return the apply plan
+     */
+    public static ApplyPlan plan(PlanInput input) {
+        ApplyPlan plan = new ApplyPlan();
+        if (input.sdkInt >= KITKAT) {
+            int uiFlags = BarFlags.SYSTEM_UI_FLAG_LAYOUT_STABLE;  //防止系统栏隐藏时内容区域大小发生变化
+            boolean aboveLollipop = isAboveLollipop(input.sdkInt, input.emui3_1);
+            if (aboveLollipop) {
+                plan.mode = ApplyPlan.MODE_LOLLIPOP;
+                uiFlags = BarFlags.aboveLollipop(uiFlags, input.fullScreen, input.navigationBarEnable);
+                uiFlags = BarFlags.darkFont(uiFlags, input.sdkInt >= M, input.darkFont);
+                planAboveLollipop(input, plan);
+                plan.systemWindows = input.childFitsSystemWindows;
+            } else {
+                plan.mode = ApplyPlan.MODE_KITKAT;
+                planBelowLollipop(input, plan);
+                plan.systemWindows = input.drawerChildFitsSystemWindows;
+            }
+            plan.systemUiVisibility = BarFlags.hideBar(uiFlags, input.barHide)
+                    | BarFlags.SYSTEM_UI_FLAG_IMMERSIVE_STICKY;
+            planPadding(input, plan, aboveLollipop);
+        }
+        if (input.miui6Later) {
+            plan.applyMiuiDarkFont = true;
+            plan.miuiDarkFont = input.darkFont;
+        }
+        if (input.flyme4Later) {
+            if (input.flymeOSStatusBarFontColor != 0) {
+                plan.flymeAction = ApplyPlan.FLYME_COLOR;
+                plan.flymeFontColor = input.flymeOSStatusBarFontColor;
+            } else if (input.sdkInt < M) {
+                plan.flymeAction = ApplyPlan.FLYME_DARK_FONT;
+                plan.flymeDarkFont = input.darkFont;
+            }
+        }
+        return plan;
+    }
+
+    private static void planAboveLollipop(PlanInput input, ApplyPlan plan) {
+        plan.clearFlags = ApplyPlan.FLAG_TRANSLUCENT_STATUS;
+        if (input.hasNavigationBar)
+            plan.clearFlags |= ApplyPlan.FLAG_TRANSLUCENT_NAVIGATION;
+        plan.addFlags = ApplyPlan.FLAG_DRAWS_SYSTEM_BAR_BACKGROUNDS;  //需要设置这个才能设置状态栏颜色
+        plan.setStatusBarColor = true;
+        plan.statusBarColor = statusBarColor(input);
+        if (input.navigationBarEnable) {
+            plan.setNavigationBarColor = true;
+            plan.navigationBarColor = navigationBarColor(input);
+        }
+    }
+
+    private static void planBelowLollipop(PlanInput input, ApplyPlan plan) {
+        plan.addFlags = ApplyPlan.FLAG_TRANSLUCENT_STATUS;
+        plan.statusBarView = true;
+        plan.statusBarViewColor = statusBarColor(input);
+        plan.statusBarViewHeight = input.statusBarHeight;
+        if (input.hasNavigationBar) {
+            //透明导航栏，如果有导航栏，底部布局会被导航栏遮住
+            if (input.navigationBarEnable && input.navigationBarWithKitkatEnable)
+                plan.addFlags |= ApplyPlan.FLAG_TRANSLUCENT_NAVIGATION;
+            else
+                plan.clearFlags |= ApplyPlan.FLAG_TRANSLUCENT_NAVIGATION;
+            plan.navigationBarView = true;
+            plan.navigationBarViewColor = kitkatNavigationBarColor(input);
+            plan.navigationBarViewAtBottom = input.navigationAtBottom;
+            if (input.navigationAtBottom) {
+                plan.navigationBarViewWidth = ApplyPlan.MATCH_PARENT;
+                plan.navigationBarViewHeight = input.navigationBarHeight;
+            } else {
+                plan.navigationBarViewWidth = input.navigationBarWidth;
+                plan.navigationBarViewHeight = ApplyPlan.MATCH_PARENT;
+            }
+        }
+    }
+
+    private static void planPadding(PlanInput input, ApplyPlan plan, boolean aboveLollipop) {
+        int key = PaddingResolver.key(aboveLollipop, plan.systemWindows, input.hasNavigationBar,
+                input.fullScreen || input.fullScreenTemp, input.navigationAtBottom, input.isSupportActionBar,
+                input.navigationBarEnable && input.navigationBarWithKitkatEnable, input.fits);
+        plan.applyPadding = true;
+        plan.paddingLeft = PaddingResolver.side(key, 0, input.statusBarHeight, input.actionBarHeight,
+                input.navigationBarHeight, input.navigationBarWidth);
+        plan.paddingTop = PaddingResolver.side(key, 1, input.statusBarHeight, input.actionBarHeight,
+                input.navigationBarHeight, input.navigationBarWidth);
+        plan.paddingRight = PaddingResolver.side(key, 2, input.statusBarHeight, input.actionBarHeight,
+                input.navigationBarHeight, input.navigationBarWidth);
+        plan.paddingBottom = PaddingResolver.side(key, 3, input.statusBarHeight, input.actionBarHeight,
+                input.navigationBarHeight, input.navigationBarWidth);
+    }
+
+    /**
+     * 状态栏颜色
+     */
+    public static int statusBarColor(PlanInput input) {
+        return ColorMath.blendARGB(input.statusBarColor,
+                input.statusBarFlag ? input.statusBarColorTransform : PlanInput.TRANSPARENT, input.statusBarAlpha);
+    }
+
+    /**
+     * 5.0以上导航栏颜色
+     */
+    public static int navigationBarColor(PlanInput input) {
+        return ColorMath.blendARGB(input.navigationBarColor,
+                input.navigationBarColorTransform, input.navigationBarAlpha);
+    }
+
+    /**
+     * 4.4和emui3.1假导航栏的颜色
+     */
+    public static int kitkatNavigationBarColor(PlanInput input) {
+        if (input.navigationBarEnable && input.navigationBarWithKitkatEnable) {
+            if (!input.fullScreen && input.navigationBarColorTransform == PlanInput.TRANSPARENT)
+                return ColorMath.blendARGB(input.navigationBarColor, PlanInput.BLACK, input.navigationBarAlpha);
+            else
+                return navigationBarColor(input);
+        } else
+            return PlanInput.TRANSPARENT;
+    }
+}
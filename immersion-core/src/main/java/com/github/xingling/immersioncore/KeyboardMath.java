@@ -0,0 +1,89 @@
+package com.github.xingling.immersioncore;
+
+/**
+ * 软键盘高度和contentView paddingBottom的计算，不依赖任何android类
+ * Keyboard height math used by KeyboardPatch.
+ * <p>
+ * visibleBottom为getWindowVisibleDisplayFrame得到的可视区域底部，contentHeight为contentView的高度。
+ */
+public final class KeyboardMath {
+
+    private KeyboardMath() {
+    }
+
+    /**
+     * 布局使用了fitsSystemWindows属性时的软键盘高度，此时不需要修改padding
+     */
+    public static int systemWindowsKeyboardHeight(int contentHeight, int visibleBottom, int navigationBarHeight) {
+        return contentHeight - visibleBottom - navigationBarHeight;
+    }
+
+    /**
+     * contentView第一个子View被遮挡的高度
+     *
+     * @param topInset 子View顶部额外的偏移，结合actionBar时为状态栏加actionBar高度，fits时为状态栏高度
+     */
+    public static int childDiff(int contentHeight, int visibleBottom, int topInset) {
+        return contentHeight + topInset - visibleBottom;
+    }
+
+    /**
+     * contentView被遮挡的高度
+     */
+    public static int frameDiff(int contentHeight, int visibleBottom) {
+        return contentHeight - visibleBottom;
+    }
+
+    /**
+     * 子View的顶部偏移
+     */
+    public static int topInset(boolean supportActionBar, boolean fits, int statusBarHeight, int actionBarHeight) {
+        if (supportActionBar)
+            return statusBarHeight + actionBarHeight;
+        else if (fits)
+            return statusBarHeight;
+        else
+            return 0;
+    }
+
+    /**
+     * 有第一个子View时的软键盘高度
+     */
+    public static int childKeyboardHeight(int diff, int navigationBarHeight, boolean fullScreen) {
+        return fullScreen ? diff - navigationBarHeight : diff;
+    }
+
+    /**
+     * 没有子View时的软键盘高度
+     *
+     * @param navigationBarEnable   是否修改了导航栏，即navigationBarEnable && navigationBarWithKitkatEnable
+     * @param translucentNavigation 4.4或emui3.1，导航栏是透明的
+     */
+    public static int frameKeyboardHeight(int diff, int navigationBarHeight, boolean fullScreen,
+                                          boolean navigationBarEnable, boolean translucentNavigation) {
+        if (!navigationBarEnable)
+            return diff;
+        if (translucentNavigation || fullScreen)
+            return diff - navigationBarHeight;
+        return diff;
+    }
+
+    /**
+     * 需要设置的paddingBottom，全屏时被遮挡的高度正好是导航栏高度说明软键盘没有弹出
+     *
+     * @param navigationBarEnable 同frameKeyboardHeight，有子View时传true
+     */
+    public static int paddingBottom(int diff, int navigationBarHeight, boolean fullScreen,
+                                    boolean navigationBarEnable) {
+        if (navigationBarEnable && fullScreen && diff == navigationBarHeight)
+            return 0;
+        return diff;
+    }
+
+    /**
+     * 软键盘是否弹出
+     */
+    public static boolean isPopup(int keyboardHeight, int navigationBarHeight) {
+        return keyboardHeight > navigationBarHeight;
+    }
+}
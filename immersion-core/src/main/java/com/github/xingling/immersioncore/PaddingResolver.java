@@ -0,0 +1,127 @@
+package com.github.xingling.immersioncore;
+
+/**
+ * contentView padding的查表解析，不依赖任何android类
+ * Table driven resolver of the content view padding.
+ * <p>
+ * 影响padding的条件被压缩成一个8位的状态值，每个状态对应的四边padding类型在类加载时预先计算好，
+ * 解析时只需要一次查表和四次取值。
+ */
+public final class PaddingResolver {
+
+    public static final int ABOVE_LOLLIPOP = 1;
+    public static final int SYSTEM_WINDOWS = 1 << 1;
+    public static final int HAS_NAVIGATION_BAR = 1 << 2;
+    public static final int FULL_SCREEN = 1 << 3;
+    public static final int NAVIGATION_AT_BOTTOM = 1 << 4;
+    public static final int SUPPORT_ACTION_BAR = 1 << 5;
+    public static final int NAVIGATION_BAR_ENABLE = 1 << 6;
+    public static final int FITS = 1 << 7;
+    public static final int KEY_COUNT = 1 << 8;
+
+    private static final int NONE = 0;
+    private static final int STATUS_BAR = 1;
+    private static final int STATUS_BAR_AND_ACTION_BAR = 2;
+    private static final int NAVIGATION_BAR_HEIGHT = 3;
+    private static final int NAVIGATION_BAR_WIDTH = 4;
+
+    private static final int SIDE_BITS = 3;
+    private static final int SIDE_MASK = (1 << SIDE_BITS) - 1;
+
+    private static final short[] TABLE = new short[KEY_COUNT];
+
+    static {
+        for (int key = 0; key < KEY_COUNT; key++) {
+            TABLE[key] = decide(key);
+        }
+    }
+
+    private PaddingResolver() {
+    }
+
+    /**
+     * 组合状态值
+     *
+     * @return the int
+     */
+    public static int key(boolean aboveLollipop, boolean systemWindows, boolean hasNavigationBar, boolean fullScreen,
+                          boolean navigationAtBottom, boolean supportActionBar, boolean navigationBarEnable, boolean fits) {
+        int key = 0;
+        if (aboveLollipop) key |= ABOVE_LOLLIPOP;
+        if (systemWindows) key |= SYSTEM_WINDOWS;
+        if (hasNavigationBar) key |= HAS_NAVIGATION_BAR;
+        if (fullScreen) key |= FULL_SCREEN;
+        if (navigationAtBottom) key |= NAVIGATION_AT_BOTTOM;
+        if (supportActionBar) key |= SUPPORT_ACTION_BAR;
+        if (navigationBarEnable) key |= NAVIGATION_BAR_ENABLE;
+        if (fits) key |= FITS;
+        return key;
+    }
+
+    /**
+     * 解析padding
+     *
+     * @param key                 状态值
+     * @param statusBarHeight     状态栏高度
+     * @param actionBarHeight     actionBar高度
+     * @param navigationBarHeight 导航栏高度
+     * @param navigationBarWidth  导航栏宽度
+     * @param out                 左上右下，长度至少为4
+     */
+    public static void resolve(int key, int statusBarHeight, int actionBarHeight,
+                               int navigationBarHeight, int navigationBarWidth, int[] out) {
+        for (int side = 0; side < 4; side++) {
+            out[side] = side(key, side, statusBarHeight, actionBarHeight, navigationBarHeight, navigationBarWidth);
+        }
+    }
+
+    /**
+     * 解析某一边的padding
+     *
+     * @param key  状态值
+     * @param side 0到3依次为左上右下
+     * @return the int
+     */
+    public static int side(int key, int side, int statusBarHeight, int actionBarHeight,
+                           int navigationBarHeight, int navigationBarWidth) {
+        switch ((TABLE[key] >> (side * SIDE_BITS)) & SIDE_MASK) {
+            case STATUS_BAR:
+                return statusBarHeight;
+            case STATUS_BAR_AND_ACTION_BAR:
+                return statusBarHeight + actionBarHeight;
+            case NAVIGATION_BAR_HEIGHT:
+                return navigationBarHeight;
+            case NAVIGATION_BAR_WIDTH:
+                return navigationBarWidth;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * 原先supportActionBar()和solveNavigation()中的判断逻辑，只在类加载时执行
+     */
+    private static short decide(int key) {
+        boolean systemWindows = (key & SYSTEM_WINDOWS) != 0;
+        boolean supportActionBar = (key & SUPPORT_ACTION_BAR) != 0;
+        boolean fits = (key & FITS) != 0;
+        int top = supportActionBar ? STATUS_BAR_AND_ACTION_BAR : (fits ? STATUS_BAR : NONE);
+        if (systemWindows)
+            return pack(NONE, NONE, NONE, NONE);
+        if ((key & ABOVE_LOLLIPOP) != 0)
+            return pack(NONE, top, NONE, NONE);
+        //解决android4.4有导航栏的情况下，activity底部被导航栏遮挡的问题
+        boolean navigationVisible = (key & HAS_NAVIGATION_BAR) != 0 && (key & FULL_SCREEN) == 0
+                && (key & NAVIGATION_BAR_ENABLE) != 0;
+        if (!navigationVisible)
+            return pack(NONE, top, NONE, NONE);
+        if ((key & NAVIGATION_AT_BOTTOM) != 0)
+            return pack(NONE, top, NONE, NAVIGATION_BAR_HEIGHT);
+        else
+            return pack(NONE, top, NAVIGATION_BAR_WIDTH, NONE);
+    }
+
+    private static short pack(int left, int top, int right, int bottom) {
+        return (short) (left | top << SIDE_BITS | right << (SIDE_BITS * 2) | bottom << (SIDE_BITS * 3));
+    }
+}
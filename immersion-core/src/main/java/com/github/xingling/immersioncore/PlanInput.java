@@ -0,0 +1,45 @@
+package com.github.xingling.immersioncore;
+
+/**
+ * 沉浸式计划的输入，只包含基本类型：系统版本、rom能力、屏幕几何信息和沉浸式参数
+ * Primitive inputs of {@link ImmersionPlanner#plan(PlanInput)}.
+ * <p>
+ * 可以复用同一个实例多次生成计划，颜色常量与android.graphics.Color的取值相同。
+ */
+public final class PlanInput {
+
+    static final int TRANSPARENT = 0;
+    static final int BLACK = 0xFF000000;
+
+    public int sdkInt;                              //Build.VERSION.SDK_INT
+    public boolean emui3_1;                         //是否是emui3.1
+    public boolean miui6Later;                      //是否是miui6以上
+    public boolean flyme4Later;                     //是否是flymeOS4以上
+
+    public boolean hasNavigationBar;                //是否存在导航栏
+    public boolean navigationAtBottom;              //导航栏是否在底部
+    public int statusBarHeight;                     //状态栏高度
+    public int actionBarHeight;                     //actionBar高度
+    public int navigationBarHeight;                 //导航栏高度
+    public int navigationBarWidth;                  //导航栏宽度
+    public boolean childFitsSystemWindows;          //contentView的子View是否使用了fitsSystemWindows属性
+    public boolean drawerChildFitsSystemWindows;    //同上，DrawerLayout以其第一个子View为准
+
+    public int statusBarColor = TRANSPARENT;        //状态栏颜色
+    public int statusBarColorTransform = BLACK;     //状态栏变换后的颜色
+    public float statusBarAlpha;                    //状态栏透明度
+    public boolean statusBarFlag = true;            //是否可以修改状态栏颜色
+    public int navigationBarColor = BLACK;          //导航栏颜色
+    public int navigationBarColorTransform = BLACK; //导航栏变换后的颜色
+    public float navigationBarAlpha;                //导航栏透明度
+    public boolean fullScreen;                      //有导航栏的情况，全屏显示
+    public boolean fullScreenTemp;
+    public int barHide = BarFlags.SHOW_BAR;         //BarFlags.SHOW_BAR等
+    public boolean darkFont;                        //状态栏字体深色与亮色标志位
+    public int flymeOSStatusBarFontColor;           //flymeOS状态栏字体变色
+    public boolean isSupportActionBar;              //结合actionBar使用
+    public boolean fits;                            //解决标题栏与状态栏重叠问题
+    public boolean navigationBarEnable = true;      //是否能修改导航栏颜色
+    public boolean navigationBarWithKitkatEnable = true;  //是否能修改4.4手机导航栏颜色
+
+}
@@ -0,0 +1,62 @@
+package com.github.xingling.immersioncore;
+
+/**
+ * 系统版本字符串的解析，不依赖任何android类，系统属性的读取在OSUtils中
+ * Parses the ROM version strings read by OSUtils.
+ */
+public final class RomVersions {
+
+    private RomVersions() {
+    }
+
+    /**
+     * miui版本号，ro.miui.ui.version.name形如"V10"
+     *
+     * @param version ro.miui.ui.version.name
+     * @return 版本号，无法解析时返回-1
+     */
+    public static int miuiVersion(String version) {
+        if (version.isEmpty())
+            return -1;
+        try {
+            return Integer.valueOf(version.substring(1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    public static boolean isEMUI3_1(String version) {
+        return "EmotionUI 3".equals(version) || version.contains("EmotionUI_3.1");
+    }
+
+    public static boolean isEMUI3_0(String version) {
+        return version.contains("EmotionUI_3.0");
+    }
+
+    /**
+     * @param displayId ro.build.display.id
+     */
+    public static boolean isFlymeOS(String displayId) {
+        return displayId.toLowerCase().contains("flyme");
+    }
+
+    /**
+     * flymeOS主版本号，ro.build.display.id形如"Flyme OS 4.5.4.2U"或"Flyme 6.1.0.0A"
+     *
+     * @param version flymeOS的ro.build.display.id
+     * @return 版本号，无法解析时返回-1
+     */
+    public static int flymeVersion(String version) {
+        if (version.isEmpty())
+            return -1;
+        try {
+            if (version.toLowerCase().contains("os")) {
+                return Integer.valueOf(version.substring(9, 10));
+            } else {
+                return Integer.valueOf(version.substring(6, 7));
+            }
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.github.xingling.immersioncore;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 穷举所有布尔输入、系统版本和隐藏方式，检查计划满足的性质
+ * Exhaustive property tests of {@link ImmersionPlanner} and {@link KeyboardMath}.
+ */
+public class ImmersionPlannerTest {
+
+    private static final int[] SDK_INTS = {16, 19, 21, 22, 23, 28};
+    private static final int[] BAR_HIDES = {BarFlags.SHOW_BAR, BarFlags.HIDE_STATUS_BAR,
+            BarFlags.HIDE_NAVIGATION_BAR, BarFlags.HIDE_BAR};
+    private static final int BOOLEAN_COUNT = 15;
+
+    private static final int STATUS_BAR_HEIGHT = 72;
+    private static final int ACTION_BAR_HEIGHT = 168;
+    private static final int NAVIGATION_BAR_HEIGHT = 144;
+    private static final int NAVIGATION_BAR_WIDTH = 126;
+
+    @Test
+    public void everyPlanSatisfiesProperties() {
+        PlanInput input = new PlanInput();
+        for (int sdkInt : SDK_INTS) {
+            for (int barHide : BAR_HIDES) {
+                for (int bits = 0; bits < 1 << BOOLEAN_COUNT; bits++) {
+                    for (int flymeColor = 0; flymeColor < 2; flymeColor++) {
+                        fill(input, sdkInt, barHide, bits, flymeColor == 0 ? 0 : 0xFF333333);
+                        check(input, ImmersionPlanner.plan(input));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void keyboardPaddingNeverExceedsDiff() {
+        for (int diff = -NAVIGATION_BAR_HEIGHT; diff <= 1000; diff++) {
+            for (int bits = 0; bits < 8; bits++) {
+                boolean fullScreen = (bits & 1) != 0;
+                boolean navigationBarEnable = (bits & 2) != 0;
+                boolean translucentNavigation = (bits & 4) != 0;
+                int padding = KeyboardMath.paddingBottom(diff, NAVIGATION_BAR_HEIGHT, fullScreen, navigationBarEnable);
+                assertTrue(padding == diff || padding == 0);
+                int height = KeyboardMath.frameKeyboardHeight(diff, NAVIGATION_BAR_HEIGHT, fullScreen,
+                        navigationBarEnable, translucentNavigation);
+                assertTrue(height == diff || height == diff - NAVIGATION_BAR_HEIGHT);
+                //全屏且被遮挡的正好是导航栏时软键盘没有弹出
+                if (fullScreen && diff == NAVIGATION_BAR_HEIGHT)
+                    assertFalse(KeyboardMath.isPopup(
+                            KeyboardMath.childKeyboardHeight(diff, NAVIGATION_BAR_HEIGHT, true), NAVIGATION_BAR_HEIGHT));
+            }
+        }
+    }
+
+    @Test
+    public void paddingSidesMatchResolve() {
+        int[] out = new int[4];
+        for (int key = 0; key < PaddingResolver.KEY_COUNT; key++) {
+            PaddingResolver.resolve(key, STATUS_BAR_HEIGHT, ACTION_BAR_HEIGHT, NAVIGATION_BAR_HEIGHT,
+                    NAVIGATION_BAR_WIDTH, out);
+            for (int side = 0; side < 4; side++) {
+                assertEquals(out[side], PaddingResolver.side(key, side, STATUS_BAR_HEIGHT, ACTION_BAR_HEIGHT,
+                        NAVIGATION_BAR_HEIGHT, NAVIGATION_BAR_WIDTH));
+            }
+        }
+    }
+
+    private static void fill(PlanInput input, int sdkInt, int barHide, int bits, int flymeColor) {
+        input.sdkInt = sdkInt;
+        input.barHide = barHide;
+        input.flymeOSStatusBarFontColor = flymeColor;
+        input.emui3_1 = bit(bits, 0);
+        input.miui6Later = bit(bits, 1);
+        input.flyme4Later = bit(bits, 2);
+        input.hasNavigationBar = bit(bits, 3);
+        input.navigationAtBottom = bit(bits, 4);
+        input.childFitsSystemWindows = bit(bits, 5);
+        input.drawerChildFitsSystemWindows = bit(bits, 6);
+        input.statusBarFlag = bit(bits, 7);
+        input.fullScreen = bit(bits, 8);
+        input.fullScreenTemp = bit(bits, 9);
+        input.darkFont = bit(bits, 10);
+        input.isSupportActionBar = bit(bits, 11);
+        input.fits = bit(bits, 12);
+        input.navigationBarEnable = bit(bits, 13);
+        input.navigationBarWithKitkatEnable = bit(bits, 14);
+        input.statusBarHeight = STATUS_BAR_HEIGHT;
+        input.actionBarHeight = ACTION_BAR_HEIGHT;
+        input.navigationBarHeight = input.hasNavigationBar ? NAVIGATION_BAR_HEIGHT : 0;
+        input.navigationBarWidth = input.hasNavigationBar ? NAVIGATION_BAR_WIDTH : 0;
+        input.statusBarColor = 0xFFFF0000;
+        input.statusBarAlpha = 0.5f;
+        input.navigationBarColorTransform = input.fullScreen ? 0xFF0000FF : PlanInput.TRANSPARENT;
+    }
+
+    private static boolean bit(int bits, int index) {
+        return (bits & (1 << index)) != 0;
+    }
+
+    private static void check(PlanInput input, ApplyPlan plan) {
+        assertEquals(0, plan.getAddFlags() & plan.getClearFlags());
+        if (input.sdkInt < ImmersionPlanner.KITKAT) {
+            assertEquals(ApplyPlan.MODE_NONE, plan.getMode());
+            assertEquals(0, plan.getAddFlags() | plan.getClearFlags() | plan.getSystemUiVisibility());
+            assertFalse(plan.isApplyPadding() || plan.hasStatusBarView() || plan.hasNavigationBarView());
+        } else {
+            assertTrue((plan.getSystemUiVisibility() & BarFlags.SYSTEM_UI_FLAG_IMMERSIVE_STICKY) != 0);
+            assertTrue((plan.getSystemUiVisibility() & BarFlags.SYSTEM_UI_FLAG_LAYOUT_STABLE) != 0);
+            assertTrue(plan.isApplyPadding());
+            checkPadding(input, plan);
+        }
+        boolean lightStatusBar = (plan.getSystemUiVisibility() & BarFlags.SYSTEM_UI_FLAG_LIGHT_STATUS_BAR) != 0;
+        assertEquals(plan.getMode() == ApplyPlan.MODE_LOLLIPOP && input.sdkInt >= ImmersionPlanner.M
+                && input.darkFont, lightStatusBar);
+        if (plan.getMode() == ApplyPlan.MODE_LOLLIPOP) {
+            assertFalse(input.emui3_1);
+            assertTrue((plan.getAddFlags() & ApplyPlan.FLAG_DRAWS_SYSTEM_BAR_BACKGROUNDS) != 0);
+            assertTrue((plan.getClearFlags() & ApplyPlan.FLAG_TRANSLUCENT_STATUS) != 0);
+            assertTrue(plan.isSetStatusBarColor());
+            assertEquals(input.navigationBarEnable, plan.isSetNavigationBarColor());
+            assertFalse(plan.hasStatusBarView() || plan.hasNavigationBarView());
+            assertEquals(input.childFitsSystemWindows, plan.isSystemWindows());
+        } else if (plan.getMode() == ApplyPlan.MODE_KITKAT) {
+            assertTrue((plan.getAddFlags() & ApplyPlan.FLAG_TRANSLUCENT_STATUS) != 0);
+            assertTrue(plan.hasStatusBarView());
+            assertEquals(STATUS_BAR_HEIGHT, plan.getStatusBarViewHeight());
+            assertEquals(input.hasNavigationBar, plan.hasNavigationBarView());
+            assertFalse(plan.isSetStatusBarColor() || plan.isSetNavigationBarColor());
+            assertEquals(input.drawerChildFitsSystemWindows, plan.isSystemWindows());
+            if (plan.hasNavigationBarView()) {
+                if (plan.isNavigationBarViewAtBottom())
+                    assertEquals(ApplyPlan.MATCH_PARENT, plan.getNavigationBarViewWidth());
+                else
+                    assertEquals(ApplyPlan.MATCH_PARENT, plan.getNavigationBarViewHeight());
+                if (!input.navigationBarEnable || !input.navigationBarWithKitkatEnable)
+                    assertEquals(PlanInput.TRANSPARENT, plan.getNavigationBarViewColor());
+            }
+        }
+        assertEquals(input.miui6Later, plan.isApplyMiuiDarkFont());
+        if (input.flyme4Later && input.flymeOSStatusBarFontColor != 0)
+            assertEquals(ApplyPlan.FLYME_COLOR, plan.getFlymeAction());
+        else if (!input.flyme4Later)
+            assertEquals(ApplyPlan.FLYME_NONE, plan.getFlymeAction());
+    }
+
+    private static void checkPadding(PlanInput input, ApplyPlan plan) {
+        assertEquals(0, plan.getPaddingLeft());
+        if (plan.isSystemWindows()) {
+            assertEquals(0, plan.getPaddingTop() | plan.getPaddingRight() | plan.getPaddingBottom());
+            return;
+        }
+        int top = plan.getPaddingTop();
+        if (input.isSupportActionBar)
+            assertEquals(STATUS_BAR_HEIGHT + ACTION_BAR_HEIGHT, top);
+        else if (input.fits)
+            assertEquals(STATUS_BAR_HEIGHT, top);
+        else
+            assertEquals(0, top);
+        //导航栏方向上最多有一边的padding
+        assertTrue(plan.getPaddingRight() == 0 || plan.getPaddingBottom() == 0);
+        if (plan.getMode() == ApplyPlan.MODE_LOLLIPOP || input.fullScreen || input.fullScreenTemp)
+            assertEquals(0, plan.getPaddingRight() | plan.getPaddingBottom());
+    }
+}
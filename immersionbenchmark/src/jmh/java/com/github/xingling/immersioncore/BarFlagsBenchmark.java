@@ -0,0 +1,37 @@
+package com.github.xingling.immersioncore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * initBar中systemUiVisibility的计算
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BarFlagsBenchmark {
+
+    private static final int[] BAR_HIDES = {BarFlags.SHOW_BAR, BarFlags.HIDE_STATUS_BAR,
+            BarFlags.HIDE_NAVIGATION_BAR, BarFlags.HIDE_BAR};
+
+    @Benchmark
+    public void hideBar(Blackhole blackhole) {
+        for (int barHide : BAR_HIDES) {
+            blackhole.consume(BarFlags.hideBar(BarFlags.SYSTEM_UI_FLAG_LAYOUT_STABLE, barHide));
+        }
+    }
+
+    @Benchmark
+    public int aboveLollipop() {
+        int uiFlags = BarFlags.aboveLollipop(BarFlags.SYSTEM_UI_FLAG_LAYOUT_STABLE, true, true);
+        uiFlags = BarFlags.darkFont(uiFlags, true, true);
+        return BarFlags.hideBar(uiFlags, BarFlags.SHOW_BAR);
+    }
+}
@@ -0,0 +1,59 @@
+package com.github.xingling.immersioncore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * transformView、initBarAboveLOLLIPOP中的颜色混合以及flyme字体颜色判断
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ColorBenchmark {
+
+    private static final int SIZE = 1024;
+
+    private int[] mColors;
+    private float[] mRatios;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        mColors = new int[SIZE];
+        mRatios = new float[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            mColors[i] = random.nextInt();
+            mRatios[i] = random.nextFloat();
+        }
+    }
+
+    @Benchmark
+    public void blendARGB(Blackhole blackhole) {
+        for (int i = 0; i < SIZE; i++) {
+            blackhole.consume(ColorMath.blendARGB(mColors[i], mColors[SIZE - 1 - i], mRatios[i]));
+        }
+    }
+
+    @Benchmark
+    public void toGrey(Blackhole blackhole) {
+        for (int i = 0; i < SIZE; i++) {
+            blackhole.consume(ColorMath.toGrey(mColors[i]));
+        }
+    }
+
+    @Benchmark
+    public void isBlackColor(Blackhole blackhole) {
+        for (int i = 0; i < SIZE; i++) {
+            blackhole.consume(ColorMath.isBlackColor(mColors[i], 50));
+        }
+    }
+}
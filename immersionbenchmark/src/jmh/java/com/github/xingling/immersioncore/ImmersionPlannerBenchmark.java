@@ -0,0 +1,46 @@
+package com.github.xingling.immersioncore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每次init()中ImmersionPlanner生成计划的耗时
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ImmersionPlannerBenchmark {
+
+    @Param({"19", "21", "23"})
+    public int sdkInt;
+
+    private final PlanInput mInput = new PlanInput();
+
+    @Setup
+    public void setUp() {
+        mInput.sdkInt = sdkInt;
+        mInput.hasNavigationBar = true;
+        mInput.navigationAtBottom = true;
+        mInput.statusBarHeight = 72;
+        mInput.actionBarHeight = 168;
+        mInput.navigationBarHeight = 144;
+        mInput.navigationBarWidth = 126;
+        mInput.statusBarColor = 0xFFFF0000;
+        mInput.statusBarAlpha = 0.3f;
+        mInput.darkFont = true;
+        mInput.fits = true;
+    }
+
+    @Benchmark
+    public ApplyPlan plan() {
+        return ImmersionPlanner.plan(mInput);
+    }
+}
@@ -0,0 +1,64 @@
+package com.github.xingling.immersioncore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * solveNavigation和supportActionBar的padding判断，遍历全部状态值
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PaddingResolverBenchmark {
+
+    private final int[] mPadding = new int[4];
+
+    //参数放在State的字段中，避免JIT把常量参数的调用整个折叠掉
+    private int mStatusBarHeight;
+    private int mActionBarHeight;
+    private int mNavigationBarHeight;
+    private int mNavigationBarWidth;
+    private boolean mAboveLollipop;
+    private boolean mSystemWindows;
+    private boolean mHasNavigationBar;
+    private boolean mFullScreen;
+    private boolean mNavigationAtBottom;
+    private boolean mSupportActionBar;
+    private boolean mNavigationBarEnable;
+    private boolean mFits;
+
+    @Setup
+    public void setUp() {
+        mStatusBarHeight = 72;
+        mActionBarHeight = 168;
+        mNavigationBarHeight = 144;
+        mNavigationBarWidth = 126;
+        mHasNavigationBar = true;
+        mNavigationAtBottom = true;
+        mNavigationBarEnable = true;
+        mFits = true;
+    }
+
+    @Benchmark
+    public void resolveAllKeys(Blackhole blackhole) {
+        for (int key = 0; key < PaddingResolver.KEY_COUNT; key++) {
+            PaddingResolver.resolve(key, mStatusBarHeight, mActionBarHeight, mNavigationBarHeight,
+                    mNavigationBarWidth, mPadding);
+            blackhole.consume(mPadding);
+        }
+    }
+
+    @Benchmark
+    public int key() {
+        return PaddingResolver.key(mAboveLollipop, mSystemWindows, mHasNavigationBar, mFullScreen,
+                mNavigationAtBottom, mSupportActionBar, mNavigationBarEnable, mFits);
+    }
+}
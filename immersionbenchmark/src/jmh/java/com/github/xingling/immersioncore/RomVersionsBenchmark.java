@@ -0,0 +1,45 @@
+package com.github.xingling.immersioncore;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OSUtils中系统版本字符串的解析
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RomVersionsBenchmark {
+
+    private final String[] mMiuiVersions = {"V10", "V5", ""};
+    private final String[] mEmuiVersions = {"EmotionUI_3.1", "EmotionUI 3", "EmotionUI_8.0.0", ""};
+    private final String[] mDisplayIds = {"Flyme OS 4.5.4.2U", "Flyme 6.1.0.0A", "OPM1.171019.011"};
+
+    @Benchmark
+    public void isMIUI6Later(Blackhole blackhole) {
+        for (String version : mMiuiVersions) {
+            blackhole.consume(RomVersions.miuiVersion(version) >= 6);
+        }
+    }
+
+    @Benchmark
+    public void isEMUI3_x(Blackhole blackhole) {
+        for (String version : mEmuiVersions) {
+            blackhole.consume(RomVersions.isEMUI3_1(version) || RomVersions.isEMUI3_0(version));
+        }
+    }
+
+    @Benchmark
+    public void isFlymeOS4Later(Blackhole blackhole) {
+        for (String displayId : mDisplayIds) {
+            blackhole.consume(RomVersions.isFlymeOS(displayId) && RomVersions.flymeVersion(displayId) >= 4);
+        }
+    }
+}
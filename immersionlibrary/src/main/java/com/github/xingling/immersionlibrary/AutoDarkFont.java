@@ -0,0 +1,236 @@
+package com.github.xingling.immersionlibrary;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.PixelCopy;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.Window;
+
+import com.github.xingling.immersioncore.ColorMath;
+
+/**
+ * 根据状态栏下方内容的亮度自动切换状态栏字体颜色
+ * Samples the content under the status bar and flips the dark font flag.
+ * <p>
+ * 每SAMPLE_FRAMES帧最多采样一次：8.0以上通过PixelCopy把窗口上一帧状态栏区域缩小复制到一个复用的小位图中，
+ * 不在主线程重新绘制，也不会因为内容中有HARDWARE位图（例如Glide加载的图片）而崩溃；
+ * 8.0以下在帧结束后把decorView缩小绘制到该位图中，绘制失败时跳过这次采样。
+ * 像素复制到复用的数组后在ImmersionExecutor中计算平均灰度，结果越过阈值时才回到主线程切换字体颜色。
+ * 采样过程不分配位图，上一次采样没有完成时不会开始下一次。
+ */
+final class AutoDarkFont implements ViewTreeObserver.OnPreDrawListener {
+
+    /**
+     * 两次采样之间至少间隔的帧数
+     */
+    static final int SAMPLE_FRAMES = 15;
+
+    /**
+     * 平均灰度高于DARK_THRESHOLD时切换为深色字体，低于LIGHT_THRESHOLD时切换为亮色字体，之间保持不变，避免来回切换
+     */
+    static final int DARK_THRESHOLD = 160;
+    static final int LIGHT_THRESHOLD = 96;
+
+    private static final int SAMPLE_WIDTH = 32;
+    private static final int SAMPLE_HEIGHT = 2;
+
+    private final Window mWindow;
+    private final View mDecorView;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Bitmap mBitmap = Bitmap.createBitmap(SAMPLE_WIDTH, SAMPLE_HEIGHT, Bitmap.Config.ARGB_8888);
+    private final Canvas mCanvas;
+    private final Rect mStatusBarRect = new Rect();
+    private final int[] mPixels = new int[SAMPLE_WIDTH * SAMPLE_HEIGHT];
+    private Object mCopyListener;
+    private boolean mCopying;
+
+    private SimpleImmersion mImmersion;
+    private int mStatusBarHeight;
+    private int mFrames;
+    private boolean mSampling;
+    private boolean mDarkFont;
+    private boolean mReleased;
+    private volatile int mGrey;
+
+    /**
+     * 帧结束后在主线程绘制采样
+     */
+    private final Runnable mSampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sample();
+        }
+    };
+
+    /**
+     * 在后台线程计算平均灰度
+     */
+    private final Runnable mAnalyzeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mGrey = ColorMath.averageGrey(mPixels, 0, mPixels.length);
+            mHandler.post(mApplyRunnable);
+        }
+    };
+
+    /**
+     * 回到主线程根据灰度切换字体颜色
+     */
+    private final Runnable mApplyRunnable = new Runnable() {
+        @Override
+        public void run() {
+            apply(mGrey);
+        }
+    };
+
+    private AutoDarkFont(Window window) {
+        mWindow = window;
+        mDecorView = window.getDecorView();
+        mCanvas = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? null : new Canvas(mBitmap);
+    }
+
+    /**
+     * 同一个窗口只创建一次，重复init()时只更新SimpleImmersion和当前的字体颜色
+     */
+    static AutoDarkFont attach(SimpleImmersion immersion, Window window, int statusBarHeight, boolean darkFont) {
+        View decorView = window.getDecorView();
+        AutoDarkFont autoDarkFont = (AutoDarkFont) decorView.getTag(R.id.immersion_auto_dark_font);
+        if (autoDarkFont == null) {
+            autoDarkFont = new AutoDarkFont(window);
+            decorView.getViewTreeObserver().addOnPreDrawListener(autoDarkFont);
+            decorView.setTag(R.id.immersion_auto_dark_font, autoDarkFont);
+            autoDarkFont.mDarkFont = darkFont;
+        }
+        autoDarkFont.mImmersion = immersion;
+        autoDarkFont.mStatusBarHeight = statusBarHeight;
+        return autoDarkFont;
+    }
+
+    /**
+     * 取消监听并释放位图，正在进行的采样结果会被丢弃
+     */
+    static void detach(View decorView) {
+        AutoDarkFont autoDarkFont = (AutoDarkFont) decorView.getTag(R.id.immersion_auto_dark_font);
+        if (autoDarkFont == null)
+            return;
+        decorView.setTag(R.id.immersion_auto_dark_font, null);
+        decorView.getViewTreeObserver().removeOnPreDrawListener(autoDarkFont);
+        decorView.removeCallbacks(autoDarkFont.mSampleRunnable);
+        autoDarkFont.mHandler.removeCallbacks(autoDarkFont.mApplyRunnable);
+        autoDarkFont.mImmersion = null;
+        autoDarkFont.mReleased = true;
+        //后台线程可能还在读取像素数组，位图只在主线程使用；PixelCopy还在写入时等复制结束后再回收
+        if (!autoDarkFont.mCopying)
+            autoDarkFont.mBitmap.recycle();
+    }
+
+    boolean isDarkFont() {
+        return mDarkFont;
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        if (!mSampling && ++mFrames >= SAMPLE_FRAMES) {
+            mFrames = 0;
+            mSampling = true;
+            mDecorView.post(mSampleRunnable);
+        }
+        return true;
+    }
+
+    private void sample() {
+        int width = mDecorView.getWidth();
+        if (mReleased || width == 0 || mStatusBarHeight == 0) {
+            mSampling = false;
+            return;
+        }
+        boolean traced = ImmersionTrace.begin("SimpleImmersion#sampleDarkFont");
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O)
+                copy(width);
+            else
+                draw(width);
+        } finally {
+            ImmersionTrace.end(traced);
+        }
+    }
+
+    /**
+     * 复制窗口上一帧的状态栏区域，复制结果在主线程回调
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    private void copy(int width) {
+        if (mCopyListener == null) {
+            mCopyListener = new PixelCopy.OnPixelCopyFinishedListener() {
+                @Override
+                public void onPixelCopyFinished(int copyResult) {
+                    mCopying = false;
+                    if (mReleased) {
+                        mBitmap.recycle();
+                        return;
+                    }
+                    if (copyResult == PixelCopy.SUCCESS)
+                        analyze();
+                    else
+                        mSampling = false;
+                }
+            };
+        }
+        mStatusBarRect.set(0, 0, width, mStatusBarHeight);
+        try {
+            PixelCopy.request(mWindow, mStatusBarRect, mBitmap,
+                    (PixelCopy.OnPixelCopyFinishedListener) mCopyListener, mHandler);
+            mCopying = true;
+        } catch (IllegalArgumentException e) {
+            //窗口还没有surface时跳过这次采样
+            e.printStackTrace();
+            mSampling = false;
+        }
+    }
+
+    /**
+     * 8.0以下没有PixelCopy，把decorView缩小绘制到位图中
+     */
+    private void draw(int width) {
+        try {
+            mBitmap.eraseColor(Color.TRANSPARENT);
+            int saveCount = mCanvas.save();
+            try {
+                mCanvas.scale((float) SAMPLE_WIDTH / width, (float) SAMPLE_HEIGHT / mStatusBarHeight);
+                mDecorView.draw(mCanvas);
+            } finally {
+                mCanvas.restoreToCount(saveCount);
+            }
+        } catch (RuntimeException e) {
+            //自定义view在软件绘制中抛出异常时跳过这次采样，不影响应用
+            e.printStackTrace();
+            mSampling = false;
+            return;
+        }
+        analyze();
+    }
+
+    private void analyze() {
+        mBitmap.getPixels(mPixels, 0, SAMPLE_WIDTH, 0, 0, SAMPLE_WIDTH, SAMPLE_HEIGHT);
+        ImmersionExecutor.get().execute(mAnalyzeRunnable);
+    }
+
+    private void apply(int grey) {
+        mSampling = false;
+        if (mReleased || grey < 0)
+            return;
+        boolean darkFont = mDarkFont ? grey >= LIGHT_THRESHOLD : grey > DARK_THRESHOLD;
+        if (darkFont != mDarkFont) {
+            mDarkFont = darkFont;
+            ImmersionEventLog.record(ImmersionEventLog.EVENT_AUTO_DARK_FONT, darkFont ? 1 : 0);
+            mImmersion.applyDarkFont(darkFont);
+        }
+    }
+}
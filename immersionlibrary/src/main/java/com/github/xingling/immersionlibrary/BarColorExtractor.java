@@ -0,0 +1,138 @@
+package com.github.xingling.immersionlibrary;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.ColorInt;
+import android.util.LruCache;
+
+import com.github.xingling.immersioncore.ColorMath;
+
+/**
+ * 从图片的上边缘和下边缘提取状态栏和导航栏颜色
+ * Extracts bar colors from the top and bottom edges of a bitmap.
+ * <p>
+ * 提取在ImmersionExecutor中进行，每个边缘只采样几行、每行隔列取色，只读取采样到的像素，采样缓冲区复用；
+ * 结果按调用方提供的key缓存在LRU中，再次打开同样的内容时直接命中缓存，不再扫描像素。
+ */
+public final class BarColorExtractor {
+
+    private static final int CACHE_SIZE = 64;
+
+    /**
+     * 边缘高度为图片高度的1/EDGE_FRACTION，每个边缘最多采样EDGE_ROWS行，每行最多采样ROW_SAMPLES个像素
+     */
+    private static final int EDGE_FRACTION = 16;
+    private static final int EDGE_ROWS = 4;
+    private static final int ROW_SAMPLES = 64;
+
+    private static final LruCache<String, Long> sCache = new LruCache<>(CACHE_SIZE);
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+
+    //只在ImmersionExecutor的单个线程中使用
+    private static final int[] sRow = new int[ROW_SAMPLES];
+    private static final long[] sSums = new long[4];
+
+    private BarColorExtractor() {
+    }
+
+    /**
+     * 提取结果的回调，在主线程调用
+     */
+    public interface Callback {
+        /**
+         * @param topColor    上边缘颜色，用作状态栏颜色
+         * @param bottomColor 下边缘颜色，用作导航栏颜色
+         */
+        void onBarColors(@ColorInt int topColor, @ColorInt int bottomColor);
+    }
+
+    /**
+     * 提取图片上下边缘的颜色，命中缓存时在当前线程直接回调，否则在后台提取完成后回到主线程回调；
+     * 图片在提取前被回收或者不能读取像素（如HARDWARE配置）时不回调
+     *
+     * @param bitmap   图片
+     * @param key      图片的标识，相同的key认为是相同的内容
+     * @param callback 回调
+     * @return 是否命中缓存并已经回调
+     */
+    public static boolean extract(final Bitmap bitmap, final String key, final Callback callback) {
+        if (bitmap == null)
+            throw new IllegalArgumentException("Bitmap不能为null");
+        if (key == null)
+            throw new IllegalArgumentException("key不能为null");
+        if (callback == null)
+            throw new IllegalArgumentException("Callback不能为null");
+        Long cached = sCache.get(key);
+        if (cached != null) {
+            callback.onBarColors(topColor(cached), bottomColor(cached));
+            return true;
+        }
+        ImmersionExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                final long colors;
+                try {
+                    colors = scan(bitmap);
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                sCache.put(key, colors);
+                sHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onBarColors(topColor(colors), bottomColor(colors));
+                    }
+                });
+            }
+        });
+        return false;
+    }
+
+    /**
+     * 清除缓存的提取结果
+     */
+    public static void clearCache() {
+        sCache.evictAll();
+    }
+
+    /**
+     * 上边缘颜色在高32位，下边缘颜色在低32位
+     */
+    private static long scan(Bitmap bitmap) {
+        if (bitmap.isRecycled())
+            throw new IllegalStateException("Bitmap已经被回收");
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int edge = Math.max(1, height / EDGE_FRACTION);
+        int top = edgeColor(bitmap, width, 0, edge);
+        int bottom = edgeColor(bitmap, width, height - edge, edge);
+        return (long) top << 32 | bottom & 0xFFFFFFFFL;
+    }
+
+    private static int edgeColor(Bitmap bitmap, int width, int startY, int rows) {
+        long[] sums = sSums;
+        sums[0] = sums[1] = sums[2] = sums[3] = 0;
+        int rowStep = Math.max(1, rows / EDGE_ROWS);
+        int columnStep = Math.max(1, width / ROW_SAMPLES);
+        int[] row = sRow;
+        for (int y = startY, end = startY + rows; y < end; y += rowStep) {
+            int count = 0;
+            for (int x = 0; x < width && count < ROW_SAMPLES; x += columnStep) {
+                row[count++] = bitmap.getPixel(x, y);
+            }
+            ColorMath.accumulateColor(row, 0, count, 1, sums);
+        }
+        return ColorMath.averageColor(sums, Color.TRANSPARENT);
+    }
+
+    private static int topColor(long colors) {
+        return (int) (colors >>> 32);
+    }
+
+    private static int bottomColor(long colors) {
+        return (int) colors;
+    }
+}
@@ -1,16 +1,11 @@
 package com.github.xingling.immersionlibrary;
 
-import android.annotation.SuppressLint;
 import android.annotation.TargetApi;
 import android.app.Activity;
 import android.content.Context;
-import android.content.res.Configuration;
-import android.content.res.Resources;
 import android.os.Build;
-import android.util.DisplayMetrics;
 import android.util.TypedValue;
-import android.view.Display;
-import android.view.WindowManager;
+import android.view.Window;
 
 /**
  * Created by geyifeng on 2017/5/11.
@@ -18,29 +13,29 @@ import android.view.WindowManager;
 
 class BarConfig {
 
-    private static final String STATUS_BAR_HEIGHT_RES_NAME = "status_bar_height";
-    private static final String NAV_BAR_HEIGHT_RES_NAME = "navigation_bar_height";
-    private static final String NAV_BAR_HEIGHT_LANDSCAPE_RES_NAME = "navigation_bar_height_landscape";
-    private static final String NAV_BAR_WIDTH_RES_NAME = "navigation_bar_width";
+    static final String STATUS_BAR_HEIGHT_RES_NAME = "status_bar_height";
+    static final String NAV_BAR_HEIGHT_RES_NAME = "navigation_bar_height";
+    static final String NAV_BAR_HEIGHT_LANDSCAPE_RES_NAME = "navigation_bar_height_landscape";
+    static final String NAV_BAR_WIDTH_RES_NAME = "navigation_bar_width";
 
     private final int mStatusBarHeight;
     private final int mActionBarHeight;
     private final boolean mHasNavigationBar;
     private final int mNavigationBarHeight;
     private final int mNavigationBarWidth;
-    private final boolean mInPortrait;
-    private final float mSmallestWidthDp;
+    private final boolean mNavigationAtBottom;
+    private final Window mWindow;
 
 
     public BarConfig(Activity activity) {
-        Resources res = activity.getResources();
-        mInPortrait = (res.getConfiguration().orientation == Configuration.ORIENTATION_PORTRAIT);
-        mSmallestWidthDp = getSmallestWidthDp(activity);
-        mStatusBarHeight = getInternalDimensionSize(res, STATUS_BAR_HEIGHT_RES_NAME);
+        DisplayGeometry geometry = DisplayGeometry.get(activity);  //屏幕相关的尺寸按屏幕和窗口缓存
+        mWindow = activity.getWindow();
+        mStatusBarHeight = geometry.statusBarHeight;
         mActionBarHeight = getActionBarHeight(activity);
-        mNavigationBarHeight = getNavigationBarHeight(activity);
-        mNavigationBarWidth = getNavigationBarWidth(activity);
-        mHasNavigationBar = (mNavigationBarHeight > 0);
+        mNavigationBarHeight = geometry.navigationBarHeight;
+        mNavigationBarWidth = geometry.navigationBarWidth;
+        mHasNavigationBar = geometry.hasNavigationBar;
+        mNavigationAtBottom = geometry.navigationAtBottom;
     }
 
     @TargetApi(14)
@@ -54,86 +49,6 @@ class BarConfig {
         return result;
     }
 
-    @TargetApi(14)
-    private int getNavigationBarHeight(Context context) {
-        Resources res = context.getResources();
-        int result = 0;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
-            if (hasNavBar((Activity) context)) {
-                String key;
-                if (mInPortrait) {
-                    key = NAV_BAR_HEIGHT_RES_NAME;
-                } else {
-                    key = NAV_BAR_HEIGHT_LANDSCAPE_RES_NAME;
-                }
-                return getInternalDimensionSize(res, key);
-            }
-        }
-        return result;
-    }
-
-    @TargetApi(14)
-    private int getNavigationBarWidth(Context context) {
-        Resources res = context.getResources();
-        int result = 0;
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
-            if (hasNavBar((Activity) context)) {
-                return getInternalDimensionSize(res, NAV_BAR_WIDTH_RES_NAME);
-            }
-        }
-        return result;
-    }
-
-    @TargetApi(14)
-    private static boolean hasNavBar(Activity activity) {
-        WindowManager windowManager = activity.getWindowManager();
-        Display d = windowManager.getDefaultDisplay();
-
-        DisplayMetrics realDisplayMetrics = new DisplayMetrics();
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            d.getRealMetrics(realDisplayMetrics);
-        }
-
-        int realHeight = realDisplayMetrics.heightPixels;
-        int realWidth = realDisplayMetrics.widthPixels;
-
-        DisplayMetrics displayMetrics = new DisplayMetrics();
-        d.getMetrics(displayMetrics);
-
-        int displayHeight = displayMetrics.heightPixels;
-        int displayWidth = displayMetrics.widthPixels;
-
-        return (realWidth - displayWidth) > 0 || (realHeight - displayHeight) > 0;
-    }
-
-    private int getInternalDimensionSize(Resources res, String key) {
-        int result = 0;
-        try {
-            Class clazz = Class.forName("com.android.internal.R$dimen");
-            Object object = clazz.newInstance();
-            int resourceId = Integer.parseInt(clazz.getField(key).get(object).toString());
-            if (resourceId > 0)
-                result = res.getDimensionPixelSize(resourceId);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return result;
-    }
-
-    @SuppressLint("NewApi")
-    private float getSmallestWidthDp(Activity activity) {
-        DisplayMetrics metrics = new DisplayMetrics();
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-            activity.getWindowManager().getDefaultDisplay().getRealMetrics(metrics);
-        } else {
-            // TODO this is not correct, but we don't really care pre-kitkat
-            activity.getWindowManager().getDefaultDisplay().getMetrics(metrics);
-        }
-        float widthDp = metrics.widthPixels / metrics.density;
-        float heightDp = metrics.heightPixels / metrics.density;
-        return Math.min(widthDp, heightDp);
-    }
-
     /**
      * Should a navigation bar appear at the bottom of the screen in the current
      * device configuration? A navigation bar may appear on the right side of
@@ -142,16 +57,27 @@ class BarConfig {
      * @return True if navigation should appear at the bottom of the screen, False otherwise.
      */
     public boolean isNavigationAtBottom() {
-        return (mSmallestWidthDp >= 600 || mInPortrait);
+        return mNavigationAtBottom;
     }
 
     /**
      * Get the height of the system status bar.
+     * 刘海比状态栏高时返回刘海的安全区域高度
      *
      * @return The height of the status bar (in pixels).
      */
     public int getStatusBarHeight() {
-        return mStatusBarHeight;
+        return Math.max(mStatusBarHeight, getCutout().getSafeInsetTop());
+    }
+
+    /**
+     * 刘海屏的安全区域和刘海的位置，从窗口自身的insets读取，窗口attach之前返回CutoutInsets.NONE
+     * Get the display cutout insets.
+     *
+     * @return the cutout insets
+     */
+    public CutoutInsets getCutout() {
+        return WindowCutout.get(mWindow);
     }
 
     /**
@@ -1,12 +1,20 @@
 package com.github.xingling.immersionlibrary;
 
+import com.github.xingling.immersioncore.BarFlags;
+
 /**
  * Created by geyifeng on 2017/4/25.
  */
 
 public enum BarHide {
-    FLAG_HIDE_STATUS_BAR, //隐藏状态栏
-    FLAG_HIDE_NAVIGATION_BAR, //隐藏导航栏
-    FLAG_HIDE_BAR,  //隐藏状态栏和导航栏
-    FLAG_SHOW_BAR  //显示状态栏和导航栏
+    FLAG_HIDE_STATUS_BAR(BarFlags.HIDE_STATUS_BAR), //隐藏状态栏
+    FLAG_HIDE_NAVIGATION_BAR(BarFlags.HIDE_NAVIGATION_BAR), //隐藏导航栏
+    FLAG_HIDE_BAR(BarFlags.HIDE_BAR),  //隐藏状态栏和导航栏
+    FLAG_SHOW_BAR(BarFlags.SHOW_BAR);  //显示状态栏和导航栏
+
+    final int flag;  //immersion-core中BarFlags.hideBar的参数
+
+    BarHide(int flag) {
+        this.flag = flag;
+    }
 }
@@ -15,6 +15,16 @@ import java.util.Map;
  * Created by geyifeng on 2017/5/9.
  */
 public class BarParams implements Cloneable {
+
+    /**
+     * diff()的结果：只有颜色变化时只需要updateColors()，字体颜色变化时只需要切换字体，其他变化需要完整的init()
+     */
+    static final int DIFF_STATUS_BAR_COLOR = 1;
+    static final int DIFF_NAVIGATION_BAR_COLOR = 1 << 1;
+    static final int DIFF_DARK_FONT = 1 << 2;
+    static final int DIFF_LAYOUT = 1 << 3;
+    static final int DIFF_ALL = DIFF_STATUS_BAR_COLOR | DIFF_NAVIGATION_BAR_COLOR | DIFF_DARK_FONT | DIFF_LAYOUT;
+
     @ColorInt
     public int statusBarColor = Color.TRANSPARENT; //状态栏颜色
     @ColorInt
@@ -27,6 +37,7 @@ public class BarParams implements Cloneable {
     public boolean fullScreenTemp = fullScreen;
     public BarHide barHide = BarHide.FLAG_SHOW_BAR;  //隐藏Bar
     public boolean darkFont = false;                 //状态栏字体深色与亮色标志位
+    public boolean autoDarkFont = false;             //根据状态栏下方内容自动切换字体颜色
     public boolean statusBarFlag = true;            //是否可以修改状态栏颜色
     @ColorInt
     public int statusBarColorTransform = Color.BLACK;  //状态栏变换后的颜色
@@ -63,14 +74,56 @@ public class BarParams implements Cloneable {
     public boolean fixMarginAtBottom = false;  //解决出现底部多余导航栏高度，默认为false
     public boolean systemWindows = false;      //也没是否使用fitsSystemWindows属性
     public KeyboardPatch keyboardPatch;        //软键盘监听类
+    int restoredKeyboardHeight;                //界面重建前的软键盘高度，创建KeyboardPatch时使用一次
+    int restoredKeyboardPadding;               //界面重建前软键盘引起的paddingBottom
     public OnKeyboardListener onKeyboardListener;   //软键盘监听类
     public ContentObserver navigationStatusObserver;  //emui3.1监听器
 
+    /**
+     * 比较两份参数，得到从当前参数切换到另一份参数需要执行的修改，监听类和运行时记录的状态不参与比较
+     *
+     * @param other 切换后的参数
+     * @return DIFF_*的组合，相同时返回0
+     */
+    int diff(BarParams other) {
+        int diff = 0;
+        if (statusBarColor != other.statusBarColor || statusBarColorTransform != other.statusBarColorTransform
+                || statusBarAlpha != other.statusBarAlpha || statusBarFlag != other.statusBarFlag
+                || viewAlpha != other.viewAlpha || !viewMap.equals(other.viewMap))
+            diff |= DIFF_STATUS_BAR_COLOR;
+        if (navigationBarColor != other.navigationBarColor
+                || navigationBarColorTransform != other.navigationBarColorTransform
+                || navigationBarAlpha != other.navigationBarAlpha)
+            diff |= DIFF_NAVIGATION_BAR_COLOR;
+        if (darkFont != other.darkFont)
+            diff |= DIFF_DARK_FONT;
+        if (fullScreen != other.fullScreen || barHide != other.barHide || fits != other.fits
+                || autoDarkFont != other.autoDarkFont || flymeOSStatusBarFontColor != other.flymeOSStatusBarFontColor
+                || statusBarColorContentView != other.statusBarColorContentView
+                || statusBarColorContentViewTransform != other.statusBarColorContentViewTransform
+                || statusBarContentViewAlpha != other.statusBarContentViewAlpha
+                || statusBarViewByHeight != other.statusBarViewByHeight || isSupportActionBar != other.isSupportActionBar
+                || titleBarView != other.titleBarView || titleBarViewMarginTop != other.titleBarViewMarginTop
+                || keyboardEnable != other.keyboardEnable || keyboardMode != other.keyboardMode
+                || navigationBarEnable != other.navigationBarEnable
+                || navigationBarWithKitkatEnable != other.navigationBarWithKitkatEnable
+                || fixMarginAtBottom != other.fixMarginAtBottom || onKeyboardListener != other.onKeyboardListener)
+            diff |= DIFF_LAYOUT;
+        return diff;
+    }
+
+    /**
+     * viewMap会被修改，复制一份，避免副本和原对象共用同一个map
+     */
     @Override
     protected BarParams clone() {
         BarParams barParams = null;
         try {
             barParams = (BarParams) super.clone();
+            barParams.viewMap = new HashMap<>(viewMap.size());
+            for (Map.Entry<View, Map<Integer, Integer>> entry : viewMap.entrySet()) {
+                barParams.viewMap.put(entry.getKey(), new HashMap<>(entry.getValue()));
+            }
         } catch (CloneNotSupportedException e) {
             e.printStackTrace();
         }
@@ -0,0 +1,144 @@
+package com.github.xingling.immersionlibrary;
+
+import android.content.res.Configuration;
+import android.os.Bundle;
+
+/**
+ * 把生效的沉浸式参数打包成一个int数组保存在Bundle中，界面重建时恢复，不需要重新测量标题栏和软键盘
+ * Packs bar state into a single int[] for onSaveInstanceState().
+ * <p>
+ * 标题栏高度和软键盘高度只在屏幕尺寸和密度都不变时恢复，旋转屏幕后仍然重新测量。
+ * 软键盘高度只在配置变化重建时保存（keyboardPatch为null时保存为0），进程被回收后软键盘不会保持弹出。
+ */
+final class BarState {
+
+    private static final String KEY = "com.github.xingling.immersionlibrary.BarState";
+    private static final int VERSION = 1;
+
+    private static final int FLAG_FULL_SCREEN = 1;
+    private static final int FLAG_FULL_SCREEN_TEMP = 1 << 1;
+    private static final int FLAG_DARK_FONT = 1 << 2;
+    private static final int FLAG_AUTO_DARK_FONT = 1 << 3;
+    private static final int FLAG_STATUS_BAR_FLAG = 1 << 4;
+    private static final int FLAG_FITS = 1 << 5;
+    private static final int FLAG_SUPPORT_ACTION_BAR = 1 << 6;
+    private static final int FLAG_KEYBOARD_ENABLE = 1 << 7;
+    private static final int FLAG_NAVIGATION_BAR_ENABLE = 1 << 8;
+    private static final int FLAG_NAVIGATION_BAR_WITH_KITKAT_ENABLE = 1 << 9;
+
+    private static final int INDEX_VERSION = 0;
+    private static final int INDEX_FLAGS = 1;
+    private static final int INDEX_BAR_HIDE = 2;
+    private static final int INDEX_STATUS_BAR_COLOR = 3;
+    private static final int INDEX_STATUS_BAR_COLOR_TRANSFORM = 4;
+    private static final int INDEX_NAVIGATION_BAR_COLOR = 5;
+    private static final int INDEX_NAVIGATION_BAR_COLOR_TRANSFORM = 6;
+    private static final int INDEX_NAVIGATION_BAR_COLOR_TEMP = 7;
+    private static final int INDEX_FLYME_FONT_COLOR = 8;
+    private static final int INDEX_CONTENT_VIEW_COLOR = 9;
+    private static final int INDEX_CONTENT_VIEW_COLOR_TRANSFORM = 10;
+    private static final int INDEX_STATUS_BAR_ALPHA = 11;
+    private static final int INDEX_NAVIGATION_BAR_ALPHA = 12;
+    private static final int INDEX_VIEW_ALPHA = 13;
+    private static final int INDEX_CONTENT_VIEW_ALPHA = 14;
+    private static final int INDEX_KEYBOARD_MODE = 15;
+    private static final int INDEX_SCREEN_SIZE = 16;
+    private static final int INDEX_DENSITY = 17;
+    private static final int INDEX_TITLE_BAR_HEIGHT = 18;
+    private static final int INDEX_TITLE_BAR_PADDING_TOP = 19;
+    private static final int INDEX_KEYBOARD_HEIGHT = 20;
+    private static final int INDEX_KEYBOARD_PADDING = 21;
+    private static final int LENGTH = 22;
+
+    private BarState() {
+    }
+
+    static void save(Bundle outState, BarParams barParams, KeyboardPatch keyboardPatch, Configuration configuration) {
+        int[] state = new int[LENGTH];
+        state[INDEX_VERSION] = VERSION;
+        state[INDEX_FLAGS] = flag(barParams.fullScreen, FLAG_FULL_SCREEN)
+                | flag(barParams.fullScreenTemp, FLAG_FULL_SCREEN_TEMP)
+                | flag(barParams.darkFont, FLAG_DARK_FONT)
+                | flag(barParams.autoDarkFont, FLAG_AUTO_DARK_FONT)
+                | flag(barParams.statusBarFlag, FLAG_STATUS_BAR_FLAG)
+                | flag(barParams.fits, FLAG_FITS)
+                | flag(barParams.isSupportActionBar, FLAG_SUPPORT_ACTION_BAR)
+                | flag(barParams.keyboardEnable, FLAG_KEYBOARD_ENABLE)
+                | flag(barParams.navigationBarEnable, FLAG_NAVIGATION_BAR_ENABLE)
+                | flag(barParams.navigationBarWithKitkatEnable, FLAG_NAVIGATION_BAR_WITH_KITKAT_ENABLE);
+        state[INDEX_BAR_HIDE] = barParams.barHide.ordinal();
+        state[INDEX_STATUS_BAR_COLOR] = barParams.statusBarColor;
+        state[INDEX_STATUS_BAR_COLOR_TRANSFORM] = barParams.statusBarColorTransform;
+        state[INDEX_NAVIGATION_BAR_COLOR] = barParams.navigationBarColor;
+        state[INDEX_NAVIGATION_BAR_COLOR_TRANSFORM] = barParams.navigationBarColorTransform;
+        state[INDEX_NAVIGATION_BAR_COLOR_TEMP] = barParams.navigationBarColorTemp;
+        state[INDEX_FLYME_FONT_COLOR] = barParams.flymeOSStatusBarFontColor;
+        state[INDEX_CONTENT_VIEW_COLOR] = barParams.statusBarColorContentView;
+        state[INDEX_CONTENT_VIEW_COLOR_TRANSFORM] = barParams.statusBarColorContentViewTransform;
+        state[INDEX_STATUS_BAR_ALPHA] = Float.floatToIntBits(barParams.statusBarAlpha);
+        state[INDEX_NAVIGATION_BAR_ALPHA] = Float.floatToIntBits(barParams.navigationBarAlpha);
+        state[INDEX_VIEW_ALPHA] = Float.floatToIntBits(barParams.viewAlpha);
+        state[INDEX_CONTENT_VIEW_ALPHA] = Float.floatToIntBits(barParams.statusBarContentViewAlpha);
+        state[INDEX_KEYBOARD_MODE] = barParams.keyboardMode;
+        state[INDEX_SCREEN_SIZE] = screenSize(configuration);
+        state[INDEX_DENSITY] = configuration.densityDpi;
+        state[INDEX_TITLE_BAR_HEIGHT] = barParams.titleBarHeight;
+        state[INDEX_TITLE_BAR_PADDING_TOP] = barParams.titleBarPaddingTopHeight;
+        if (keyboardPatch != null) {
+            state[INDEX_KEYBOARD_HEIGHT] = keyboardPatch.getKeyboardHeight();
+            state[INDEX_KEYBOARD_PADDING] = keyboardPatch.getKeyboardPadding();
+        }
+        outState.putIntArray(KEY, state);
+    }
+
+    /**
+     * 恢复保存的参数，版本不同或没有保存时不修改
+     *
+     * @return 是否恢复
+     */
+    static boolean restore(Bundle savedInstanceState, BarParams barParams, Configuration configuration) {
+        int[] state = savedInstanceState.getIntArray(KEY);
+        if (state == null || state.length != LENGTH || state[INDEX_VERSION] != VERSION)
+            return false;
+        int flags = state[INDEX_FLAGS];
+        barParams.fullScreen = (flags & FLAG_FULL_SCREEN) != 0;
+        barParams.fullScreenTemp = (flags & FLAG_FULL_SCREEN_TEMP) != 0;
+        barParams.darkFont = (flags & FLAG_DARK_FONT) != 0;
+        barParams.autoDarkFont = (flags & FLAG_AUTO_DARK_FONT) != 0;
+        barParams.statusBarFlag = (flags & FLAG_STATUS_BAR_FLAG) != 0;
+        barParams.fits = (flags & FLAG_FITS) != 0;
+        barParams.isSupportActionBar = (flags & FLAG_SUPPORT_ACTION_BAR) != 0;
+        barParams.keyboardEnable = (flags & FLAG_KEYBOARD_ENABLE) != 0;
+        barParams.navigationBarEnable = (flags & FLAG_NAVIGATION_BAR_ENABLE) != 0;
+        barParams.navigationBarWithKitkatEnable = (flags & FLAG_NAVIGATION_BAR_WITH_KITKAT_ENABLE) != 0;
+        barParams.barHide = BarHide.values()[state[INDEX_BAR_HIDE]];
+        barParams.statusBarColor = state[INDEX_STATUS_BAR_COLOR];
+        barParams.statusBarColorTransform = state[INDEX_STATUS_BAR_COLOR_TRANSFORM];
+        barParams.navigationBarColor = state[INDEX_NAVIGATION_BAR_COLOR];
+        barParams.navigationBarColorTransform = state[INDEX_NAVIGATION_BAR_COLOR_TRANSFORM];
+        barParams.navigationBarColorTemp = state[INDEX_NAVIGATION_BAR_COLOR_TEMP];
+        barParams.flymeOSStatusBarFontColor = state[INDEX_FLYME_FONT_COLOR];
+        barParams.statusBarColorContentView = state[INDEX_CONTENT_VIEW_COLOR];
+        barParams.statusBarColorContentViewTransform = state[INDEX_CONTENT_VIEW_COLOR_TRANSFORM];
+        barParams.statusBarAlpha = Float.intBitsToFloat(state[INDEX_STATUS_BAR_ALPHA]);
+        barParams.navigationBarAlpha = Float.intBitsToFloat(state[INDEX_NAVIGATION_BAR_ALPHA]);
+        barParams.viewAlpha = Float.intBitsToFloat(state[INDEX_VIEW_ALPHA]);
+        barParams.statusBarContentViewAlpha = Float.intBitsToFloat(state[INDEX_CONTENT_VIEW_ALPHA]);
+        barParams.keyboardMode = state[INDEX_KEYBOARD_MODE];
+        if (state[INDEX_SCREEN_SIZE] == screenSize(configuration) && state[INDEX_DENSITY] == configuration.densityDpi) {
+            barParams.titleBarHeight = state[INDEX_TITLE_BAR_HEIGHT];
+            barParams.titleBarPaddingTopHeight = state[INDEX_TITLE_BAR_PADDING_TOP];
+            barParams.restoredKeyboardHeight = state[INDEX_KEYBOARD_HEIGHT];
+            barParams.restoredKeyboardPadding = state[INDEX_KEYBOARD_PADDING];
+        }
+        return true;
+    }
+
+    private static int flag(boolean value, int flag) {
+        return value ? flag : 0;
+    }
+
+    private static int screenSize(Configuration configuration) {
+        return configuration.screenWidthDp << 16 | configuration.screenHeightDp & 0xFFFF;
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.xingling.immersionlibrary;
+
+import android.annotation.TargetApi;
+import android.graphics.Rect;
+import android.os.Build;
+import android.view.DisplayCutout;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 刘海屏的安全区域和刘海的位置，9.0以上有效，按窗口缓存，窗口的WindowInsets变化后重新读取
+ * Display cutout safe insets and bounding rects.
+ */
+public final class CutoutInsets {
+
+    /**
+     * 没有刘海或9.0以下
+     */
+    public static final CutoutInsets NONE = new CutoutInsets(0, 0, 0, 0, Collections.<Rect>emptyList());
+
+    private final int mSafeInsetLeft;
+    private final int mSafeInsetTop;
+    private final int mSafeInsetRight;
+    private final int mSafeInsetBottom;
+    private final List<Rect> mBoundingRects;
+
+    private CutoutInsets(int left, int top, int right, int bottom, List<Rect> boundingRects) {
+        mSafeInsetLeft = left;
+        mSafeInsetTop = top;
+        mSafeInsetRight = right;
+        mSafeInsetBottom = bottom;
+        mBoundingRects = boundingRects;
+    }
+
+    @TargetApi(Build.VERSION_CODES.P)
+    static CutoutInsets of(DisplayCutout cutout) {
+        if (cutout == null)
+            return NONE;
+        List<Rect> boundingRects = new ArrayList<>(cutout.getBoundingRects().size());
+        for (Rect rect : cutout.getBoundingRects()) {
+            boundingRects.add(new Rect(rect));
+        }
+        return new CutoutInsets(cutout.getSafeInsetLeft(), cutout.getSafeInsetTop(), cutout.getSafeInsetRight(),
+                cutout.getSafeInsetBottom(), Collections.unmodifiableList(boundingRects));
+    }
+
+    public int getSafeInsetLeft() {
+        return mSafeInsetLeft;
+    }
+
+    public int getSafeInsetTop() {
+        return mSafeInsetTop;
+    }
+
+    public int getSafeInsetRight() {
+        return mSafeInsetRight;
+    }
+
+    public int getSafeInsetBottom() {
+        return mSafeInsetBottom;
+    }
+
+    /**
+     * 刘海的区域，不可修改
+     *
+     * @return the bounding rects
+     */
+    public List<Rect> getBoundingRects() {
+        return mBoundingRects;
+    }
+}
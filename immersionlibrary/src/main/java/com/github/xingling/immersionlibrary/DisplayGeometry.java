@@ -0,0 +1,191 @@
+package com.github.xingling.immersionlibrary;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.hardware.display.DisplayManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.util.LruCache;
+import android.view.Display;
+import android.view.Surface;
+
+import java.util.Map;
+
+/**
+ * 状态栏、导航栏的尺寸和导航栏位置，按(displayId, 屏幕方向, 多窗口模式, 窗口尺寸, 密度)缓存
+ * Per-display bar geometry cache.
+ * <p>
+ * 导航栏的位置由屏幕的实际尺寸和应用可用尺寸之差决定：宽度减少说明导航栏在侧边，高度减少说明在底部；
+ * 多窗口模式下窗口比屏幕小，无法通过比较尺寸判断，使用系统的config_showNavigationBar，位置按屏幕的旋转方向和
+ * 系统的规则判断（最短边小于600dp的屏幕横向旋转时导航栏在侧边）。
+ * 屏幕变化时通过DisplayListener清除该屏幕的缓存，多窗口中调整窗口大小时窗口尺寸相同的geometry直接复用。
+ * 刘海屏信息与窗口有关，不在这里缓存，见WindowCutout。
+ */
+final class DisplayGeometry {
+
+    private static final int CACHE_SIZE = 32;
+    private static final LruCache<Key, DisplayGeometry> sCache = new LruCache<>(CACHE_SIZE);
+    private static boolean sListening;
+
+    final int statusBarHeight;
+    final boolean hasNavigationBar;
+    final int navigationBarHeight;
+    final int navigationBarWidth;
+    final boolean navigationAtBottom;
+
+    private DisplayGeometry(Activity activity, Display display, boolean inMultiWindowMode) {
+        Resources res = activity.getResources();
+        DisplayMetrics realMetrics = new DisplayMetrics();
+        display.getRealMetrics(realMetrics);
+        boolean displayPortrait = realMetrics.widthPixels <= realMetrics.heightPixels;
+        statusBarHeight = getInternalDimensionSize(res, BarConfig.STATUS_BAR_HEIGHT_RES_NAME);
+        hasNavigationBar = inMultiWindowMode ? showNavigationBar(res, display, realMetrics)
+                : hasNavBar(display, realMetrics);
+        navigationBarHeight = hasNavigationBar ? getInternalDimensionSize(res, displayPortrait
+                ? BarConfig.NAV_BAR_HEIGHT_RES_NAME : BarConfig.NAV_BAR_HEIGHT_LANDSCAPE_RES_NAME) : 0;
+        navigationBarWidth = hasNavigationBar ? getInternalDimensionSize(res, BarConfig.NAV_BAR_WIDTH_RES_NAME) : 0;
+        navigationAtBottom = inMultiWindowMode ? navigationAtBottomByRotation(display, realMetrics)
+                : navigationAtBottom(display, realMetrics);
+    }
+
+    /**
+     * 得到Activity所在屏幕和窗口的geometry，命中缓存时不查询屏幕，可以在后台线程调用
+     */
+    static DisplayGeometry get(Activity activity) {
+        Display display = activity.getWindowManager().getDefaultDisplay();
+        boolean inMultiWindowMode = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N && activity.isInMultiWindowMode();
+        Key key = new Key(display.getDisplayId(), display.getRotation(), inMultiWindowMode,
+                activity.getResources().getConfiguration());
+        DisplayGeometry geometry = sCache.get(key);
+        if (geometry == null) {
+            listen(activity.getApplicationContext());
+            geometry = new DisplayGeometry(activity, display, inMultiWindowMode);
+            sCache.put(key, geometry);
+        }
+        return geometry;
+    }
+
+    /**
+     * 清除一个屏幕的缓存
+     */
+    static void invalidate(int displayId) {
+        for (Map.Entry<Key, DisplayGeometry> entry : sCache.snapshot().entrySet()) {
+            if (entry.getKey().displayId == displayId)
+                sCache.remove(entry.getKey());
+        }
+    }
+
+    /**
+     * 第一次查询屏幕时注册监听，屏幕尺寸、密度、旋转变化或屏幕移除时清除该屏幕的缓存
+     */
+    private static synchronized void listen(Context context) {
+        if (sListening)
+            return;
+        sListening = true;
+        DisplayManager displayManager = (DisplayManager) context.getSystemService(Context.DISPLAY_SERVICE);
+        if (displayManager == null)
+            return;
+        displayManager.registerDisplayListener(new DisplayManager.DisplayListener() {
+            @Override
+            public void onDisplayAdded(int displayId) {
+            }
+
+            @Override
+            public void onDisplayRemoved(int displayId) {
+                invalidate(displayId);
+            }
+
+            @Override
+            public void onDisplayChanged(int displayId) {
+                invalidate(displayId);
+            }
+        }, new Handler(Looper.getMainLooper()));
+    }
+
+    private static boolean hasNavBar(Display display, DisplayMetrics realMetrics) {
+        DisplayMetrics displayMetrics = new DisplayMetrics();
+        display.getMetrics(displayMetrics);
+        return (realMetrics.widthPixels - displayMetrics.widthPixels) > 0
+                || (realMetrics.heightPixels - displayMetrics.heightPixels) > 0;
+    }
+
+    /**
+     * 导航栏占用的是屏幕的高度还是宽度，两者都没有减少时（没有导航栏或已隐藏）按屏幕旋转方向判断
+     */
+    private static boolean navigationAtBottom(Display display, DisplayMetrics realMetrics) {
+        DisplayMetrics displayMetrics = new DisplayMetrics();
+        display.getMetrics(displayMetrics);
+        int widthDelta = realMetrics.widthPixels - displayMetrics.widthPixels;
+        int heightDelta = realMetrics.heightPixels - displayMetrics.heightPixels;
+        if (widthDelta <= 0 && heightDelta <= 0)
+            return navigationAtBottomByRotation(display, realMetrics);
+        return heightDelta >= widthDelta;
+    }
+
+    /**
+     * 与系统的规则一致：最短边小于600dp的屏幕旋转到横向时导航栏移到侧边，其余情况在底部
+     */
+    private static boolean navigationAtBottomByRotation(Display display, DisplayMetrics realMetrics) {
+        int rotation = display.getRotation();
+        boolean rotated = rotation == Surface.ROTATION_90 || rotation == Surface.ROTATION_270;
+        float shortSizeDp = Math.min(realMetrics.widthPixels, realMetrics.heightPixels) / realMetrics.density;
+        return !rotated || shortSizeDp >= 600;
+    }
+
+    /**
+     * 多窗口模式下读取系统是否显示导航栏，读取不到时按整个屏幕的尺寸判断
+     */
+    @TargetApi(Build.VERSION_CODES.N)
+    private static boolean showNavigationBar(Resources res, Display display, DisplayMetrics realMetrics) {
+        int resourceId = res.getIdentifier("config_showNavigationBar", "bool", "android");
+        if (resourceId > 0)
+            return res.getBoolean(resourceId);
+        return hasNavBar(display, realMetrics);
+    }
+
+    private static int getInternalDimensionSize(Resources res, String key) {
+        int result = 0;
+        int resourceId = ImmersionProbes.internalDimenId(key);
+        if (resourceId > 0)
+            result = res.getDimensionPixelSize(resourceId);
+        return result;
+    }
+
+    /**
+     * 缓存的key，displayId完整保存，虚拟屏幕的id可以很大；其余为屏幕旋转、多窗口模式、方向、密度、窗口宽度和高度(dp)
+     */
+    private static final class Key {
+        final int displayId;
+        final long config;
+
+        Key(int displayId, int rotation, boolean inMultiWindowMode, Configuration configuration) {
+            this.displayId = displayId;
+            this.config = (long) (rotation & 0x3) << 54
+                    | (inMultiWindowMode ? 1L << 53 : 0)
+                    | (long) (configuration.orientation & 0x3) << 51
+                    | (long) (configuration.densityDpi & 0xFFF) << 28
+                    | (long) (configuration.screenWidthDp & 0x3FFF) << 14
+                    | (long) (configuration.screenHeightDp & 0x3FFF);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return displayId == key.displayId && config == key.config;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * displayId + (int) (config ^ (config >>> 32));
+        }
+    }
+}
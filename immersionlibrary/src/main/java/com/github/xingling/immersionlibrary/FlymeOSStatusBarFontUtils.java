@@ -6,6 +6,8 @@ import android.view.View;
 import android.view.Window;
 import android.view.WindowManager;
 
+import com.github.xingling.immersioncore.ColorMath;
+
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -54,8 +56,7 @@ public class FlymeOSStatusBarFontUtils {
      * @return boolean
      */
     public static boolean isBlackColor(int color, int level) {
-        int grey = toGrey(color);
-        return grey < level;
+        return ColorMath.isBlackColor(color, level);
     }
 
     /**
@@ -66,10 +67,7 @@ public class FlymeOSStatusBarFontUtils {
      * @return　灰度值
      */
     public static int toGrey(int rgb) {
-        int blue = rgb & 0x000000FF;
-        int green = (rgb & 0x0000FF00) >> 8;
-        int red = (rgb & 0x00FF0000) >> 16;
-        return (red * 38 + green * 75 + blue * 15) >> 7;
+        return ColorMath.toGrey(rgb);
     }
 
     /**
@@ -79,8 +77,18 @@ public class FlymeOSStatusBarFontUtils {
      * @param color    颜色
      */
     public static void setStatusBarDarkIcon(Activity activity, int color) {
+        WindowTransaction transaction = new WindowTransaction(activity.getWindow());
+        setStatusBarDarkIcon(activity, color, transaction);
+        transaction.commit();
+    }
+
+    /**
+     * 同上，window属性的修改记录在transaction中，由调用者统一提交
+     */
+    static void setStatusBarDarkIcon(Activity activity, int color, WindowTransaction transaction) {
         if (mSetStatusBarColorIcon != null) {
             try {
+                ImmersionMetrics.count(ImmersionMetrics.COUNTER_REFLECTION);
                 mSetStatusBarColorIcon.invoke(activity, color);
             } catch (IllegalAccessException e) {
                 e.printStackTrace();
@@ -90,10 +98,10 @@ public class FlymeOSStatusBarFontUtils {
         } else {
             boolean whiteColor = isBlackColor(color, 50);
             if (mStatusBarColorFiled != null) {
-                setStatusBarDarkIcon(activity, whiteColor, whiteColor);
-                setStatusBarDarkIcon(activity.getWindow(), color);
+                setStatusBarDarkIcon(activity, whiteColor, whiteColor, transaction);
+                setStatusBarDarkIcon(color, transaction);
             } else {
-                setStatusBarDarkIcon(activity, whiteColor);
+                setStatusBarDarkIcon(activity, whiteColor, true, transaction);
             }
         }
     }
@@ -105,10 +113,16 @@ public class FlymeOSStatusBarFontUtils {
      * @param color  颜色
      */
     public static void setStatusBarDarkIcon(Window window, int color) {
+        WindowTransaction transaction = new WindowTransaction(window);
+        setStatusBarDarkIcon(color, transaction);
+        transaction.commit();
+    }
+
+    private static void setStatusBarDarkIcon(int color, WindowTransaction transaction) {
         try {
-            setStatusBarColor(window, color);
+            setStatusBarColor(transaction, color);
             if (Build.VERSION.SDK_INT > Build.VERSION_CODES.LOLLIPOP_MR1) {
-                setStatusBarDarkIcon(window.getDecorView(), true);
+                setStatusBarDarkIcon(transaction.getWindow().getDecorView(), true);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -122,11 +136,21 @@ public class FlymeOSStatusBarFontUtils {
      * @param dark     是否深色 true为深色 false 为白色
      */
     public static void setStatusBarDarkIcon(Activity activity, boolean dark) {
-        setStatusBarDarkIcon(activity, dark, true);
+        WindowTransaction transaction = new WindowTransaction(activity.getWindow());
+        setStatusBarDarkIcon(activity, dark, true, transaction);
+        transaction.commit();
+    }
+
+    /**
+     * 同上，window属性的修改记录在transaction中，由调用者统一提交
+     */
+    static void setStatusBarDarkIcon(Activity activity, boolean dark, WindowTransaction transaction) {
+        setStatusBarDarkIcon(activity, dark, true, transaction);
     }
 
     private static boolean changeMeizuFlag(WindowManager.LayoutParams winParams, String flagName, boolean on) {
         try {
+            ImmersionMetrics.count(ImmersionMetrics.COUNTER_REFLECTION);
             Field f = winParams.getClass().getDeclaredField(flagName);
             f.setAccessible(true);
             int bits = f.getInt(winParams);
@@ -170,24 +194,26 @@ public class FlymeOSStatusBarFontUtils {
             newVis &= ~SYSTEM_UI_FLAG_LIGHT_STATUS_BAR;
         }
         if (newVis != oldVis) {
+            ImmersionMetrics.count(ImmersionMetrics.COUNTER_SET_SYSTEM_UI_VISIBILITY);
             view.setSystemUiVisibility(newVis);
         }
     }
 
     /**
-     * 设置状态栏颜色
+     * 设置状态栏颜色，只修改属性对象，由transaction提交
      *
-     * @param window
+     * @param transaction
      * @param color
      */
-    private static void setStatusBarColor(Window window, int color) {
-        WindowManager.LayoutParams winParams = window.getAttributes();
+    private static void setStatusBarColor(WindowTransaction transaction, int color) {
+        WindowManager.LayoutParams winParams = transaction.attributes();
         if (mStatusBarColorFiled != null) {
             try {
+                ImmersionMetrics.count(ImmersionMetrics.COUNTER_REFLECTION);
                 int oldColor = mStatusBarColorFiled.getInt(winParams);
                 if (oldColor != color) {
                     mStatusBarColorFiled.set(winParams, color);
-                    window.setAttributes(winParams);
+                    transaction.attributesChanged();
                 }
             } catch (IllegalAccessException e) {
                 e.printStackTrace();
@@ -202,20 +228,29 @@ public class FlymeOSStatusBarFontUtils {
      * @param dark   是否深色 true为深色 false 为白色
      */
     public static void setStatusBarDarkIcon(Window window, boolean dark) {
+        WindowTransaction transaction = new WindowTransaction(window);
+        setStatusBarDarkIcon(dark, transaction);
+        transaction.commit();
+    }
+
+    private static void setStatusBarDarkIcon(boolean dark, WindowTransaction transaction) {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
-            changeMeizuFlag(window.getAttributes(), "MEIZU_FLAG_DARK_STATUS_BAR_ICON", dark);
+            if (changeMeizuFlag(transaction.attributes(), "MEIZU_FLAG_DARK_STATUS_BAR_ICON", dark))
+                transaction.attributesChanged();
         } else {
-            View decorView = window.getDecorView();
+            View decorView = transaction.getWindow().getDecorView();
             if (decorView != null) {
                 setStatusBarDarkIcon(decorView, dark);
-                setStatusBarColor(window, 0);
+                setStatusBarColor(transaction, 0);
             }
         }
     }
 
-    private static void setStatusBarDarkIcon(Activity activity, boolean dark, boolean flag) {
+    private static void setStatusBarDarkIcon(Activity activity, boolean dark, boolean flag,
+                                             WindowTransaction transaction) {
         if (mSetStatusBarDarkIcon != null) {
             try {
+                ImmersionMetrics.count(ImmersionMetrics.COUNTER_REFLECTION);
                 mSetStatusBarDarkIcon.invoke(activity, dark);
             } catch (IllegalAccessException e) {
                 e.printStackTrace();
@@ -224,7 +259,7 @@ public class FlymeOSStatusBarFontUtils {
             }
         } else {
             if (flag) {
-                setStatusBarDarkIcon(activity.getWindow(), dark);
+                setStatusBarDarkIcon(dark, transaction);
             }
         }
     }
@@ -0,0 +1,225 @@
+package com.github.xingling.immersionlibrary;
+
+import android.app.Activity;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+import android.support.v4.app.FragmentManager;
+import android.view.View;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+
+/**
+ * 每个窗口一个Fragment沉浸式栈，栈顶为当前显示的Fragment的参数
+ * Per-window stack of fragment scoped immersion params.
+ * <p>
+ * with(activity, fragment).init()把Fragment的参数压入栈顶，Fragment resume时回到栈顶，销毁视图时出栈；
+ * 栈顶变化时比较切换前后的参数，只有颜色或字体颜色不同时不再执行完整的init()。
+ * 栈为空时恢复Activity最后一次init()的参数。
+ * <p>
+ * 隐藏的Fragment和ViewPager中预加载的页面（userVisibleHint为false）也会resume，它们的参数只记录不切换。
+ * FragmentTransaction的show()/hide()和setUserVisibleHint()没有生命周期回调，Fragment需要在
+ * onHiddenChanged(false)和setUserVisibleHint(true)中重新调用init()，使用PagerImmersion的ViewPager不需要。
+ */
+final class FragmentImmersionStack extends FragmentManager.FragmentLifecycleCallbacks {
+
+    private final FragmentActivity mActivity;
+    private final View mDecorView;
+    private final ArrayList<Entry> mEntries = new ArrayList<>();
+    private final ArrayList<WeakReference<PagerImmersion>> mPagers = new ArrayList<>();
+    private BarParams mApplied;
+
+    private FragmentImmersionStack(FragmentActivity activity, View decorView) {
+        mActivity = activity;
+        mDecorView = decorView;
+    }
+
+    /**
+     * 得到窗口的栈，第一次调用时创建并注册Fragment生命周期监听
+     *
+     * @return Activity不是FragmentActivity时返回null
+     */
+    static FragmentImmersionStack of(Activity activity, View decorView) {
+        FragmentImmersionStack stack = (FragmentImmersionStack) decorView.getTag(R.id.immersion_fragment_stack);
+        if (stack == null && activity instanceof FragmentActivity) {
+            stack = new FragmentImmersionStack((FragmentActivity) activity, decorView);
+            stack.mApplied = (BarParams) decorView.getTag(R.id.immersion_activity_params);
+            stack.mActivity.getSupportFragmentManager().registerFragmentLifecycleCallbacks(stack, true);
+            decorView.setTag(R.id.immersion_fragment_stack, stack);
+        }
+        return stack;
+    }
+
+    /**
+     * 取消监听，在destroy()中调用
+     */
+    static void release(View decorView) {
+        FragmentImmersionStack stack = (FragmentImmersionStack) decorView.getTag(R.id.immersion_fragment_stack);
+        if (stack == null)
+            return;
+        decorView.setTag(R.id.immersion_fragment_stack, null);
+        stack.mActivity.getSupportFragmentManager().unregisterFragmentLifecycleCallbacks(stack);
+        stack.mEntries.clear();
+        stack.mPagers.clear();
+        stack.mApplied = null;
+    }
+
+    /**
+     * 记录页面为Fragment的PagerImmersion，页面视图销毁时移除该页面的参数；弱引用，ViewPager销毁后自动清除
+     */
+    void addPager(PagerImmersion pager) {
+        for (int i = mPagers.size() - 1; i >= 0; i--) {
+            PagerImmersion added = mPagers.get(i).get();
+            if (added == pager)
+                return;
+            if (added == null)
+                mPagers.remove(i);
+        }
+        mPagers.add(new WeakReference<>(pager));
+    }
+
+    /**
+     * 记录Activity自身的参数已经生效，栈为空时恢复到这份参数
+     */
+    static void activityApplied(View decorView, BarParams barParams) {
+        decorView.setTag(R.id.immersion_activity_params, barParams);
+        FragmentImmersionStack stack = (FragmentImmersionStack) decorView.getTag(R.id.immersion_fragment_stack);
+        if (stack != null)
+            stack.mApplied = barParams;
+    }
+
+    /**
+     * 参数是否为窗口当前生效的参数：有栈时为栈最后切换到的参数，否则为Activity最后一次init()的参数
+     */
+    static boolean isApplied(View decorView, BarParams barParams) {
+        FragmentImmersionStack stack = (FragmentImmersionStack) decorView.getTag(R.id.immersion_fragment_stack);
+        if (stack != null && stack.mApplied != null)
+            return stack.mApplied == barParams;
+        return decorView.getTag(R.id.immersion_activity_params) == barParams;
+    }
+
+    /**
+     * 把Fragment的参数压入栈顶并切换，同一个Fragment重复调用时替换原来的参数
+     */
+    void push(Fragment fragment, SimpleImmersion immersion) {
+        int index = indexOf(fragment);
+        if (index >= 0)
+            mEntries.remove(index);
+        Entry entry = new Entry(fragment, immersion);
+        if (isVisible(fragment)) {
+            mEntries.add(entry);
+            switchTo(immersion);
+        } else
+            mEntries.add(0, entry);  //不可见时放在栈底，只记录参数，显示后重新init()或resume时再切换
+    }
+
+    @Override
+    public void onFragmentResumed(FragmentManager fm, Fragment f) {
+        int index = indexOf(f);
+        if (index < 0 || !isVisible(f))
+            return;
+        Entry entry = mEntries.remove(index);
+        mEntries.add(entry);
+        if (entry.immersion.getBarParams() != mApplied)
+            switchTo(entry.immersion);
+    }
+
+    @Override
+    public void onFragmentViewDestroyed(FragmentManager fm, Fragment f) {
+        remove(f);
+        for (int i = mPagers.size() - 1; i >= 0; i--) {
+            PagerImmersion pager = mPagers.get(i).get();
+            if (pager == null)
+                mPagers.remove(i);
+            else
+                pager.remove(f);
+        }
+    }
+
+    @Override
+    public void onFragmentDestroyed(FragmentManager fm, Fragment f) {
+        remove(f);
+    }
+
+    /**
+     * Fragment出栈，原来在栈顶时切换到新的栈顶，栈为空时恢复Activity的参数
+     */
+    void remove(Fragment fragment) {
+        int index = indexOf(fragment);
+        if (index < 0)
+            return;
+        boolean top = index == mEntries.size() - 1;
+        mEntries.remove(index);
+        if (!top || mActivity.isFinishing())
+            return;
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            Fragment entryFragment = mEntries.get(i).fragment.get();
+            if (entryFragment != null && isVisible(entryFragment)) {
+                switchTo(mEntries.get(i).immersion);
+                return;
+            }
+        }
+        BarParams activityParams = (BarParams) mDecorView.getTag(R.id.immersion_activity_params);
+        if (activityParams != null)
+            switchTo(SimpleImmersion.restore(mActivity, activityParams));
+    }
+
+    /**
+     * 窗口尺寸变化后重新创建栈中的实例，使之后的切换使用新的尺寸，当前生效的是Fragment的参数时按新的尺寸重新应用
+     *
+     * @param titleBarOffset 状态栏高度的变化，见TitleBarFitter.offset()
+     * @return 当前生效的是Fragment的参数并已经重新应用时返回true，否则由调用方重新应用Activity的参数
+     */
+    boolean reapply(int titleBarOffset) {
+        SimpleImmersion applied = null;
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            Entry entry = mEntries.get(i);
+            entry.immersion = SimpleImmersion.restore(mActivity, entry.immersion.getBarParams())
+                    .refitTitleBar(titleBarOffset);
+            if (applied == null && entry.immersion.getBarParams() == mApplied)
+                applied = entry.immersion;
+        }
+        if (applied == null)
+            return false;
+        applied.applyDiff(BarParams.DIFF_ALL);
+        return true;
+    }
+
+    /**
+     * 从当前生效的参数切换到新的参数，只执行两者之间的差异
+     */
+    private void switchTo(SimpleImmersion incoming) {
+        BarParams outgoing = mApplied;
+        mApplied = incoming.getBarParams();
+        incoming.applyDiff(outgoing == null ? BarParams.DIFF_ALL : outgoing.diff(mApplied));
+    }
+
+    /**
+     * 隐藏的Fragment和ViewPager中不可见的页面不参与切换
+     */
+    private static boolean isVisible(Fragment fragment) {
+        return !fragment.isHidden() && fragment.getUserVisibleHint();
+    }
+
+    private int indexOf(Fragment fragment) {
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            Fragment entryFragment = mEntries.get(i).fragment.get();
+            if (entryFragment == null) {
+                mEntries.remove(i);
+            } else if (entryFragment == fragment) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Entry {
+        final WeakReference<Fragment> fragment;
+        SimpleImmersion immersion;
+
+        Entry(Fragment fragment, SimpleImmersion immersion) {
+            this.fragment = new WeakReference<>(fragment);
+            this.immersion = immersion;
+        }
+    }
+}
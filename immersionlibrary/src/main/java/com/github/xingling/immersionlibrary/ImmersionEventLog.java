@@ -0,0 +1,134 @@
+package com.github.xingling.immersionlibrary;
+
+import android.os.SystemClock;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 最近沉浸式事件的环形缓冲区，默认关闭
+ * Fixed-size ring buffer of recent immersion events.
+ * <p>
+ * 记录init()、软键盘高度变化、emui3.x导航栏显示隐藏和自动切换字体颜色，每条事件包含时间戳、与上一条事件的间隔和一个参数。
+ * 写入只使用原子操作，不加锁也不分配对象；满了之后覆盖最旧的事件，可以随时dump到文件。
+ */
+public final class ImmersionEventLog {
+
+    public static final int EVENT_APPLY = 1;
+    public static final int EVENT_KEYBOARD_CHANGE = 2;
+    public static final int EVENT_EMUI_NAVIGATION = 3;
+    public static final int EVENT_AUTO_DARK_FONT = 4;
+
+    private static final String[] EVENT_NAMES = {"unknown", "apply", "keyboardChange", "emuiNavigation",
+            "autoDarkFont"};
+
+    private static volatile ImmersionEventLog sEventLog;
+
+    private final int mMask;
+    private final AtomicLong mSequence = new AtomicLong();
+    private final AtomicLong mLastTime = new AtomicLong();
+    private final AtomicLongArray mTimes;
+    private final AtomicLongArray mDeltas;
+    private final AtomicLongArray mPayloads;   //高32位为事件类型，低32位为参数
+    private final AtomicLongArray mSequences;  //写入完成后记录序号，dump时用来丢弃正在写入的槽位
+
+    /**
+     * @param capacity 容量，向上取整为2的幂
+     */
+    public ImmersionEventLog(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity必须大于0");
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+            size <<= 1;
+        mMask = size - 1;
+        mTimes = new AtomicLongArray(size);
+        mDeltas = new AtomicLongArray(size);
+        mPayloads = new AtomicLongArray(size);
+        mSequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            mSequences.set(i, -1);
+        }
+    }
+
+    /**
+     * 安装事件记录，传null关闭
+     *
+     * @param eventLog the event log
+     */
+    public static void install(ImmersionEventLog eventLog) {
+        sEventLog = eventLog;
+    }
+
+    public static ImmersionEventLog get() {
+        return sEventLog;
+    }
+
+    /**
+     * 记录一条事件
+     *
+     * @param type 事件类型
+     * @param arg  参数，apply为window属性分发次数，keyboardChange为软键盘高度，emuiNavigation为navigationbar_is_min
+     */
+    static void record(int type, int arg) {
+        ImmersionEventLog eventLog = sEventLog;
+        if (eventLog != null)
+            eventLog.append(type, arg);
+    }
+
+    private void append(int type, int arg) {
+        long time = SystemClock.elapsedRealtimeNanos();
+        long lastTime = mLastTime.getAndSet(time);
+        long sequence = mSequence.getAndIncrement();
+        int index = (int) (sequence & mMask);
+        mSequences.set(index, -1);
+        mTimes.set(index, time);
+        mDeltas.set(index, lastTime == 0 ? 0 : time - lastTime);
+        mPayloads.set(index, ((long) type << 32) | (arg & 0xFFFFFFFFL));
+        mSequences.lazySet(index, sequence);
+    }
+
+    /**
+     * 按时间顺序输出所有事件，每行为：序号 时间戳(ns) 间隔(ns) 事件 参数
+     *
+     * @param writer the writer
+     * @throws IOException the io exception
+     */
+    public void dump(Writer writer) throws IOException {
+        long end = mSequence.get();
+        long start = Math.max(0, end - (mMask + 1));
+        for (long sequence = start; sequence < end; sequence++) {
+            int index = (int) (sequence & mMask);
+            if (mSequences.get(index) != sequence)
+                continue;  //已被覆盖或正在写入
+            long time = mTimes.get(index);
+            long delta = mDeltas.get(index);
+            long payload = mPayloads.get(index);
+            if (mSequences.get(index) != sequence)
+                continue;  //读取过程中被覆盖
+            int type = (int) (payload >>> 32);
+            writer.write(sequence + " " + time + " " + delta + " "
+                    + EVENT_NAMES[type < EVENT_NAMES.length ? type : 0] + " " + (int) payload + "\n");
+        }
+        writer.flush();
+    }
+
+    /**
+     * 输出到文件
+     *
+     * @param file the file
+     * @throws IOException the io exception
+     */
+    public void dump(File file) throws IOException {
+        Writer writer = new FileWriter(file);
+        try {
+            dump(writer);
+        } finally {
+            writer.close();
+        }
+    }
+}
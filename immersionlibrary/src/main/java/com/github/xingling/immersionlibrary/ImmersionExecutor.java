@@ -0,0 +1,47 @@
+package com.github.xingling.immersionlibrary;
+
+import android.os.Process;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 沉浸式的后台线程，用于反射读取系统属性、读取资源等不需要主线程的准备工作
+ * Shared background executor.
+ * <p>
+ * 单线程，空闲一段时间后线程退出，不会常驻。
+ */
+final class ImmersionExecutor {
+
+    private static final long KEEP_ALIVE_SECONDS = 10;
+    private static ExecutorService sExecutor;
+
+    private ImmersionExecutor() {
+    }
+
+    static synchronized ExecutorService get() {
+        if (sExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            runnable.run();
+                        }
+                    }, "SimpleImmersion");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            sExecutor = executor;
+        }
+        return sExecutor;
+    }
+}
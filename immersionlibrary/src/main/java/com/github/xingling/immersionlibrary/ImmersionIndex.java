@@ -0,0 +1,18 @@
+package com.github.xingling.immersionlibrary;
+
+import android.app.Activity;
+
+/**
+ * immersion-compiler根据@Immersion注解生成的索引，通过SimpleImmersion.addIndex()注册
+ * Generated registry of compile-time immersion configurations.
+ */
+public interface ImmersionIndex {
+
+    /**
+     * 按Activity的类名查找编译期生成的配置并执行
+     *
+     * @param activity the activity
+     * @return 该Activity使用了@Immersion返回true，否则什么都不做并返回false
+     */
+    boolean apply(Activity activity);
+}
@@ -0,0 +1,97 @@
+package com.github.xingling.immersionlibrary;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Bundle;
+import android.view.View;
+
+/**
+ * 通过ActivityLifecycleCallbacks为匹配规则的Activity自动初始化沉浸式
+ * Applies immersion rules before the first traversal of every started activity.
+ * <p>
+ * onActivityCreated在Activity.onCreate()的super调用中分发，此时还没有setContentView()，标题栏和contentView的padding无法确定；
+ * onActivityStarted是setContentView()之后的第一个回调，而窗口在onResume()之后才添加到WindowManager，
+ * 所以在这里初始化仍然早于第一次measure/layout，flag和padding会在第一帧中一起生效。
+ * 每个窗口只初始化一次，通过decorView的tag标记，Activity销毁时自动调用destroy()。
+ */
+final class ImmersionInstaller implements Application.ActivityLifecycleCallbacks {
+
+    private static ImmersionInstaller sInstaller;
+
+    private final Application mApplication;
+    private final ImmersionRule[] mRules;
+
+    private ImmersionInstaller(Application application, ImmersionRule[] rules) {
+        mApplication = application;
+        mRules = rules;
+    }
+
+    static synchronized void install(Application application, ImmersionRule[] rules) {
+        uninstall();
+        sInstaller = new ImmersionInstaller(application, rules.clone());
+        application.registerActivityLifecycleCallbacks(sInstaller);
+    }
+
+    static synchronized void uninstall() {
+        if (sInstaller != null) {
+            sInstaller.mApplication.unregisterActivityLifecycleCallbacks(sInstaller);
+            sInstaller = null;
+        }
+    }
+
+    private ImmersionRule match(Activity activity) {
+        for (ImmersionRule rule : mRules) {
+            if (rule.matches(activity))
+                return rule;
+        }
+        return null;
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        View decorView = activity.getWindow().getDecorView();
+        if (decorView.getTag(R.id.immersion_installed) != null)
+            return;
+        ImmersionRule rule = match(activity);
+        if (rule == null)
+            return;
+        boolean traced = ImmersionTrace.begin("ImmersionInstaller#apply");
+        try {
+            decorView.setTag(R.id.immersion_installed, rule);
+            SimpleImmersion immersion = SimpleImmersion.with(activity);
+            rule.configure(activity, immersion);
+            immersion.init();
+        } finally {
+            ImmersionTrace.end(traced);
+        }
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+        View decorView = activity.getWindow().peekDecorView();
+        if (decorView != null && decorView.getTag(R.id.immersion_installed) != null) {
+            SimpleImmersion.with(activity).destroy();
+            decorView.setTag(R.id.immersion_installed, null);
+        }
+    }
+}
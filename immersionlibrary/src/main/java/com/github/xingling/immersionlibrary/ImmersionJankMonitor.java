@@ -0,0 +1,305 @@
+package com.github.xingling.immersionlibrary;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.FrameMetrics;
+import android.view.View;
+import android.view.Window;
+import android.view.WindowManager;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 掉帧统计，把超时的帧归因到同一帧内执行的沉浸式操作，默认关闭
+ * Jank monitor that attributes over-budget frames to immersion operations.
+ * <p>
+ * 通过{@link #install(ImmersionJankMonitor)}安装后，init()过的窗口在8.0以上通过FrameMetrics获取每帧主线程的结束时间和总耗时，
+ * 8.0以下通过Choreographer的帧间隔判断掉帧（会让每一帧都回调，只在安装时运行）。
+ * FrameMetrics按窗口分别回调，每个窗口有自己的listener和上一帧结束时间，保存在decorView的tag中，多个窗口的帧不会互相截断统计区间。
+ * apply、软键盘padding变化、假状态栏/导航栏重新添加和标题栏重新适配时记录时间戳，
+ * 与上一帧主线程结束之后、本帧主线程结束之前执行的操作计入本帧。记录和统计只使用原子数组，不加锁也不分配对象；
+ * 没有安装时每次记录只读取一次volatile变量。
+ */
+public final class ImmersionJankMonitor {
+
+    public static final int OP_APPLY = 0;
+    public static final int OP_KEYBOARD_PADDING = 1;
+    public static final int OP_BAR_VIEW_ATTACH = 2;
+    public static final int OP_TITLE_BAR_REFIT = 3;
+    public static final int OP_COUNT = 4;
+
+    /**
+     * export()的数组布局：总帧数、掉帧数，之后每个操作依次为执行过该操作的帧数和其中掉帧的帧数
+     */
+    public static final int INDEX_FRAMES = 0;
+    public static final int INDEX_JANK_FRAMES = 1;
+    public static final int EXPORT_LENGTH = 2 + OP_COUNT * 2;
+
+    private static final String[] OP_NAMES = {"apply", "keyboardPadding", "barViewAttach", "titleBarRefit"};
+
+    /**
+     * 每个操作保留最近的时间戳个数，FrameMetrics延迟回调期间同一操作执行多次时不会覆盖还没有统计的时间戳
+     */
+    private static final int MARK_SLOTS = 8;
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 16666667L;
+
+    private static volatile ImmersionJankMonitor sMonitor;
+    private static Handler sFrameHandler;
+
+    private final AtomicLongArray mMarks = new AtomicLongArray(OP_COUNT * MARK_SLOTS);
+    private final AtomicIntegerArray mMarkSequences = new AtomicIntegerArray(OP_COUNT);
+    private final AtomicLongArray mCounts = new AtomicLongArray(EXPORT_LENGTH);
+    private volatile long mFrameIntervalNanos = DEFAULT_FRAME_INTERVAL_NANOS;
+    /**
+     * 8.0以下Choreographer统计使用，只在主线程访问
+     */
+    private long mLastFrameEnd;
+    private long mLastFrameTime;
+    private boolean mChoreographerRunning;
+
+    /**
+     * 8.0以下在主线程每帧回调，比较与上一帧的间隔
+     */
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (sMonitor != ImmersionJankMonitor.this) {
+                mChoreographerRunning = false;
+                mLastFrameTime = 0;
+                return;
+            }
+            long lastFrameTime = mLastFrameTime;
+            mLastFrameTime = frameTimeNanos;
+            if (lastFrameTime != 0) {
+                long interval = mFrameIntervalNanos;
+                //上一帧从lastFrameTime开始，间隔超过1.5帧说明至少错过了一次vsync
+                onFrame(mLastFrameEnd, frameTimeNanos, frameTimeNanos - lastFrameTime > interval + interval / 2);
+                mLastFrameEnd = frameTimeNanos;
+            } else
+                mLastFrameEnd = frameTimeNanos - mFrameIntervalNanos;  //开始统计前一帧内的操作计入第一帧
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    /**
+     * 安装掉帧统计，传null关闭；已经init()过的窗口在下一次init()时开始统计，之前的统计在各窗口的下一帧停止
+     *
+     * @param monitor the monitor
+     */
+    public static void install(ImmersionJankMonitor monitor) {
+        sMonitor = monitor;
+    }
+
+    public static ImmersionJankMonitor get() {
+        return sMonitor;
+    }
+
+    /**
+     * 记录一次沉浸式操作
+     */
+    static void mark(int op) {
+        ImmersionJankMonitor monitor = sMonitor;
+        if (monitor != null) {
+            int sequence = monitor.mMarkSequences.getAndIncrement(op);
+            monitor.mMarks.set(op * MARK_SLOTS + (sequence & (MARK_SLOTS - 1)), System.nanoTime());
+        }
+    }
+
+    /**
+     * 开始统计窗口的帧，同一个窗口只注册一次，在主线程调用
+     */
+    static void watch(Window window) {
+        ImmersionJankMonitor monitor = sMonitor;
+        if (monitor == null)
+            return;
+        View decorView = window.getDecorView();
+        WindowFrames watching = (WindowFrames) decorView.getTag(R.id.immersion_jank_monitor);
+        if (watching != null && watching.monitor == monitor)
+            return;
+        if (watching != null)
+            unwatch(window);
+        Display display = window.getWindowManager().getDefaultDisplay();
+        float refreshRate = display != null ? display.getRefreshRate() : 0;
+        if (refreshRate > 0)
+            monitor.mFrameIntervalNanos = (long) (1000000000L / refreshRate);
+        WindowFrames frames = new WindowFrames(monitor);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            //软件绘制的窗口没有FrameMetrics，attach之后添加的listener也不会被保存，移除时会抛出异常
+            if ((window.getAttributes().flags & WindowManager.LayoutParams.FLAG_HARDWARE_ACCELERATED) != 0)
+                window.addOnFrameMetricsAvailableListener(frameListener(frames), frameHandler());
+        } else if (!monitor.mChoreographerRunning) {
+            monitor.mChoreographerRunning = true;
+            Choreographer.getInstance().postFrameCallback(monitor.mFrameCallback);
+        }
+        decorView.setTag(R.id.immersion_jank_monitor, frames);
+    }
+
+    /**
+     * 停止统计窗口的帧，8.0以下Choreographer在关闭统计后自动停止
+     */
+    static void unwatch(Window window) {
+        View decorView = window.getDecorView();
+        WindowFrames frames = (WindowFrames) decorView.getTag(R.id.immersion_jank_monitor);
+        if (frames == null)
+            return;
+        decorView.setTag(R.id.immersion_jank_monitor, null);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && frames.listener != null) {
+            try {
+                window.removeOnFrameMetricsAvailableListener(frameListener(frames));
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 一帧结束，统计主线程在(上一帧结束, frameEnd]之间执行过的操作
+     *
+     * @param from 同一个窗口上一帧的结束时间
+     */
+    private void onFrame(long from, long frameEnd, boolean jank) {
+        mCounts.incrementAndGet(INDEX_FRAMES);
+        if (jank)
+            mCounts.incrementAndGet(INDEX_JANK_FRAMES);
+        for (int op = 0; op < OP_COUNT; op++) {
+            if (ranBetween(op, from, frameEnd)) {
+                mCounts.incrementAndGet(2 + op * 2);
+                if (jank)
+                    mCounts.incrementAndGet(3 + op * 2);
+            }
+        }
+    }
+
+    private boolean ranBetween(int op, long from, long to) {
+        for (int i = op * MARK_SLOTS, end = i + MARK_SLOTS; i < end; i++) {
+            long time = mMarks.get(i);
+            if (time > from && time <= to)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * 每个窗口一个listener，创建后保存在WindowFrames中，unwatch()时用同一个实例移除；
+     * 回调都在frameHandler()的线程上，lastFrameEnd不需要同步；与8.0以下一样，统计关闭后在下一帧停止
+     */
+    @TargetApi(Build.VERSION_CODES.O)
+    private static Window.OnFrameMetricsAvailableListener frameListener(final WindowFrames frames) {
+        if (frames.listener == null) {
+            frames.listener = new Window.OnFrameMetricsAvailableListener() {
+                @Override
+                public void onFrameMetricsAvailable(final Window window, FrameMetrics frameMetrics, int dropCountSinceLastInvocation) {
+                    ImmersionJankMonitor monitor = frames.monitor;
+                    if (sMonitor != monitor) {
+                        //关闭或替换了统计，在主线程移除自己，之后不再回调
+                        if (!frames.detaching) {
+                            frames.detaching = true;
+                            window.getDecorView().post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    if (window.getDecorView().getTag(R.id.immersion_jank_monitor) == frames)
+                                        unwatch(window);
+                                }
+                            });
+                        }
+                        return;
+                    }
+                    if (frameMetrics.getMetric(FrameMetrics.FIRST_DRAW_FRAME) != 0)
+                        return;  //第一帧包含布局加载，不计入
+                    //主线程在DRAW阶段结束，之后的操作会在下一帧生效
+                    long frameEnd = frameMetrics.getMetric(FrameMetrics.INTENDED_VSYNC_TIMESTAMP)
+                            + frameMetrics.getMetric(FrameMetrics.UNKNOWN_DELAY_DURATION)
+                            + frameMetrics.getMetric(FrameMetrics.INPUT_HANDLING_DURATION)
+                            + frameMetrics.getMetric(FrameMetrics.ANIMATION_DURATION)
+                            + frameMetrics.getMetric(FrameMetrics.LAYOUT_MEASURE_DURATION)
+                            + frameMetrics.getMetric(FrameMetrics.DRAW_DURATION);
+                    if (frames.lastFrameEnd == 0)
+                        frames.lastFrameEnd = frameMetrics.getMetric(FrameMetrics.INTENDED_VSYNC_TIMESTAMP) - monitor.mFrameIntervalNanos;
+                    monitor.onFrame(frames.lastFrameEnd, frameEnd,
+                            frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION) > monitor.mFrameIntervalNanos);
+                    frames.lastFrameEnd = frameEnd;
+                }
+            };
+        }
+        return (Window.OnFrameMetricsAvailableListener) frames.listener;
+    }
+
+    private static synchronized Handler frameHandler() {
+        if (sFrameHandler == null) {
+            HandlerThread thread = new HandlerThread("ImmersionJankMonitor");
+            thread.start();
+            sFrameHandler = new Handler(thread.getLooper());
+        }
+        return sFrameHandler;
+    }
+
+    public long getFrameCount() {
+        return mCounts.get(INDEX_FRAMES);
+    }
+
+    public long getJankFrameCount() {
+        return mCounts.get(INDEX_JANK_FRAMES);
+    }
+
+    /**
+     * 执行过该操作的帧数
+     */
+    public long getOperationFrameCount(int op) {
+        return mCounts.get(2 + op * 2);
+    }
+
+    /**
+     * 执行过该操作并且掉帧的帧数
+     */
+    public long getOperationJankCount(int op) {
+        return mCounts.get(3 + op * 2);
+    }
+
+    /**
+     * 导出统计，适合定时上报
+     *
+     * @param counts 长度至少为EXPORT_LENGTH，布局见INDEX_FRAMES
+     * @param reset  导出的同时清零，每一项的读取和清零是原子的
+     */
+    public void export(long[] counts, boolean reset) {
+        for (int i = 0; i < EXPORT_LENGTH; i++) {
+            counts[i] = reset ? mCounts.getAndSet(i, 0) : mCounts.get(i);
+        }
+    }
+
+    public void reset() {
+        for (int i = 0; i < EXPORT_LENGTH; i++) {
+            mCounts.set(i, 0);
+        }
+    }
+
+    /**
+     * 一个窗口的统计状态，保存在decorView的tag中
+     */
+    private static final class WindowFrames {
+        final ImmersionJankMonitor monitor;
+        long lastFrameEnd;
+        boolean detaching;    //只在frameHandler()的线程上访问
+        Object listener;
+
+        WindowFrames(ImmersionJankMonitor monitor) {
+            this.monitor = monitor;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ImmersionJankMonitor{frames=").append(getFrameCount())
+                .append(", jank=").append(getJankFrameCount());
+        for (int op = 0; op < OP_COUNT; op++) {
+            builder.append(", ").append(OP_NAMES[op]).append('=').append(getOperationJankCount(op))
+                    .append('/').append(getOperationFrameCount(op));
+        }
+        return builder.append('}').toString();
+    }
+}
@@ -0,0 +1,194 @@
+package com.github.xingling.immersionlibrary;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 沉浸式初始化的耗时和计数统计，默认关闭
+ * Timing and counter sink for SimpleImmersion.
+ * <p>
+ * 通过{@link #install(ImmersionMetrics)}安装后，init()各阶段的纳秒耗时按2的幂分桶记录成直方图，
+ * 反射、setPadding、setSystemUiVisibility、window属性分发和软键盘检测的次数记录为计数器。
+ * 记录只使用原子数组，不加锁也不分配对象；阶段耗时和计数器都按sampleRate采样：每次init()开始时决定是否采样，
+ * 计数器记录被采样的init()以及之后到下一次init()之前发生的操作（软键盘、反射探测等）。
+ */
+public final class ImmersionMetrics {
+
+    public static final int PHASE_INIT_BAR = 0;
+    public static final int PHASE_STATUS_BAR_VIEW = 1;
+    public static final int PHASE_TRANSFORM_VIEW = 2;
+    public static final int PHASE_KEYBOARD_ENABLE = 3;
+    public static final int PHASE_REGISTER_EMUI3_X = 4;
+    public static final int PHASE_COUNT = 5;
+
+    public static final int COUNTER_REFLECTION = 0;
+    public static final int COUNTER_SET_PADDING = 1;
+    public static final int COUNTER_SET_SYSTEM_UI_VISIBILITY = 2;
+    public static final int COUNTER_WINDOW_ATTRIBUTES = 3;
+    public static final int COUNTER_KEYBOARD_DETECTOR = 4;
+    public static final int COUNTER_COUNT = 5;
+
+    /**
+     * 直方图桶数，第i个桶记录耗时在[2^(i-1), 2^i)纳秒之间的次数
+     */
+    public static final int BUCKET_COUNT = 64;
+
+    private static final String[] PHASE_NAMES = {"initBar", "setStatusBarView", "transformView",
+            "keyboardEnable", "registerEMUI3_x"};
+    private static final String[] COUNTER_NAMES = {"reflection", "setPadding", "setSystemUiVisibility",
+            "windowAttributes", "keyboardDetector"};
+
+    private static volatile ImmersionMetrics sMetrics;
+
+    private final int mSampleRate;
+    private final AtomicInteger mSampleSequence = new AtomicInteger();
+    private volatile boolean mSampling;
+    private final AtomicLongArray mHistograms = new AtomicLongArray(PHASE_COUNT * BUCKET_COUNT);
+    private final AtomicLongArray mPhaseNanos = new AtomicLongArray(PHASE_COUNT);
+    private final AtomicLongArray mPhaseCounts = new AtomicLongArray(PHASE_COUNT);
+    private final AtomicLongArray mCounters = new AtomicLongArray(COUNTER_COUNT);
+
+    public ImmersionMetrics() {
+        this(1);
+    }
+
+    /**
+     * @param sampleRate 每sampleRate次init()采样一次阶段耗时和计数器，1表示每次都记录
+     */
+    public ImmersionMetrics(int sampleRate) {
+        if (sampleRate < 1)
+            throw new IllegalArgumentException("sampleRate必须大于0");
+        mSampleRate = sampleRate;
+        mSampling = sampleRate == 1;
+    }
+
+    /**
+     * 安装统计，传null关闭
+     *
+     * @param metrics the metrics
+     */
+    public static void install(ImmersionMetrics metrics) {
+        sMetrics = metrics;
+    }
+
+    public static ImmersionMetrics get() {
+        return sMetrics;
+    }
+
+    /**
+     * 一次init()开始时调用，本次需要记录阶段耗时时返回当前的统计，否则返回null；
+     * 同时决定到下一次init()之前是否记录计数器
+     */
+    static ImmersionMetrics sample() {
+        ImmersionMetrics metrics = sMetrics;
+        if (metrics == null)
+            return null;
+        boolean sampling = metrics.mSampleRate == 1
+                || metrics.mSampleSequence.getAndIncrement() % metrics.mSampleRate == 0;
+        if (metrics.mSampling != sampling)
+            metrics.mSampling = sampling;
+        return sampling ? metrics : null;
+    }
+
+    /**
+     * 记录一个阶段的耗时
+     *
+     * @param metrics sample()的返回值，为null时不记录
+     * @param phase   阶段
+     * @param start   阶段开始的System.nanoTime()
+     */
+    static void record(ImmersionMetrics metrics, int phase, long start) {
+        if (metrics == null)
+            return;
+        long nanos = System.nanoTime() - start;
+        metrics.mHistograms.incrementAndGet(phase * BUCKET_COUNT + bucketOf(nanos));
+        metrics.mPhaseNanos.addAndGet(phase, nanos);
+        metrics.mPhaseCounts.incrementAndGet(phase);
+    }
+
+    static long start(ImmersionMetrics metrics) {
+        return metrics != null ? System.nanoTime() : 0;
+    }
+
+    /**
+     * 计数器加一，当前没有采样时不记录
+     */
+    static void count(int counter) {
+        count(counter, 1);
+    }
+
+    static void count(int counter, int delta) {
+        ImmersionMetrics metrics = sMetrics;
+        if (metrics != null && delta != 0 && metrics.mSampling)
+            metrics.mCounters.addAndGet(counter, delta);
+    }
+
+    public long getCount(int counter) {
+        return mCounters.get(counter);
+    }
+
+    /**
+     * 阶段被记录的次数
+     */
+    public long getPhaseCount(int phase) {
+        return mPhaseCounts.get(phase);
+    }
+
+    /**
+     * 阶段累计耗时，单位纳秒
+     */
+    public long getPhaseNanos(int phase) {
+        return mPhaseNanos.get(phase);
+    }
+
+    /**
+     * 导出一个阶段的直方图
+     *
+     * @param phase   阶段
+     * @param buckets 长度至少为BUCKET_COUNT，第i个元素为耗时小于bucketUpperBoundNanos(i)的次数
+     */
+    public void exportHistogram(int phase, long[] buckets) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mHistograms.get(phase * BUCKET_COUNT + i);
+        }
+    }
+
+    /**
+     * 第bucket个桶的上界（不包含），单位纳秒
+     */
+    public static long bucketUpperBoundNanos(int bucket) {
+        return bucket >= BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    public void reset() {
+        for (int i = 0; i < mHistograms.length(); i++) {
+            mHistograms.set(i, 0);
+        }
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            mPhaseNanos.set(i, 0);
+            mPhaseCounts.set(i, 0);
+        }
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            mCounters.set(i, 0);
+        }
+    }
+
+    private static int bucketOf(long nanos) {
+        return nanos <= 0 ? 0 : Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("ImmersionMetrics{");
+        for (int i = 0; i < PHASE_COUNT; i++) {
+            long count = mPhaseCounts.get(i);
+            builder.append(PHASE_NAMES[i]).append('=').append(count).append("x/")
+                    .append(count == 0 ? 0 : mPhaseNanos.get(i) / count).append("ns, ");
+        }
+        for (int i = 0; i < COUNTER_COUNT; i++) {
+            builder.append(COUNTER_NAMES[i]).append('=').append(mCounters.get(i));
+            builder.append(i == COUNTER_COUNT - 1 ? "}" : ", ");
+        }
+        return builder.toString();
+    }
+}
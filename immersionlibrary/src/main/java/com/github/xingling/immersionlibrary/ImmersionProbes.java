@@ -0,0 +1,139 @@
+package com.github.xingling.immersionlibrary;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.DisplayMetrics;
+import android.view.WindowManager;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 进程内不会变化、但第一次获取需要反射的值：rom的系统属性和com.android.internal.R$dimen中的资源id
+ * Memoized reflection probes, optionally prewarmed on a background thread.
+ * <p>
+ * 每个值对应一个FutureTask，谁先需要谁执行，其他线程只等待自己需要的那一个值，
+ * FutureTask.get()保证结果对等待的线程可见。prewarm()在后台线程依次执行所有探测。
+ */
+final class ImmersionProbes {
+
+    private static final ConcurrentHashMap<String, FutureTask<String>> sProperties = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, FutureTask<Integer>> sDimenIds = new ConcurrentHashMap<>();
+    private static final AtomicBoolean sPrewarmed = new AtomicBoolean();
+
+    private ImmersionProbes() {
+    }
+
+    /**
+     * 在后台线程执行所有探测，重复调用只执行一次
+     *
+     * @param context application context
+     */
+    static void prewarm(final Context context) {
+        if (!sPrewarmed.compareAndSet(false, true))
+            return;
+        ImmersionExecutor.get().execute(new Runnable() {
+            @Override
+            public void run() {
+                boolean traced = ImmersionTrace.begin("ImmersionProbes#prewarm");
+                try {
+                    systemProperty(OSUtils.KEY_MIUI_VERSION_NAME);
+                    systemProperty(OSUtils.KEY_EMUI_VERSION_NAME);
+                    systemProperty(OSUtils.KEY_DISPLAY);
+                    internalDimenId(BarConfig.STATUS_BAR_HEIGHT_RES_NAME);
+                    internalDimenId(BarConfig.NAV_BAR_HEIGHT_RES_NAME);
+                    internalDimenId(BarConfig.NAV_BAR_HEIGHT_LANDSCAPE_RES_NAME);
+                    internalDimenId(BarConfig.NAV_BAR_WIDTH_RES_NAME);
+                    try {
+                        //静态初始化中反射查找flyme的方法和字段
+                        Class.forName(FlymeOSStatusBarFontUtils.class.getName());
+                    } catch (ClassNotFoundException e) {
+                        e.printStackTrace();
+                    }
+                    warmDisplay(context);
+                } finally {
+                    ImmersionTrace.end(traced);
+                }
+            }
+        });
+    }
+
+    /**
+     * 系统属性，读取失败时为空字符串
+     */
+    static String systemProperty(final String key) {
+        FutureTask<String> task = sProperties.get(key);
+        if (task != null)
+            return await(task, "");
+        return await(task(sProperties, key, new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                ImmersionMetrics.count(ImmersionMetrics.COUNTER_REFLECTION);
+                Class<?> clz = Class.forName("android.os.SystemProperties");
+                Method get = clz.getMethod("get", String.class, String.class);
+                return (String) get.invoke(clz, key, "");
+            }
+        }), "");
+    }
+
+    /**
+     * com.android.internal.R$dimen中的资源id，不存在时为0
+     */
+    static int internalDimenId(final String key) {
+        FutureTask<Integer> task = sDimenIds.get(key);
+        if (task != null)
+            return await(task, 0);
+        return await(task(sDimenIds, key, new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                ImmersionMetrics.count(ImmersionMetrics.COUNTER_REFLECTION);
+                Class clazz = Class.forName("com.android.internal.R$dimen");
+                Object object = clazz.newInstance();
+                return Integer.parseInt(clazz.getField(key).get(object).toString());
+            }
+        }), 0);
+    }
+
+    /**
+     * 第一次查询屏幕尺寸时DisplayManagerGlobal需要跨进程获取DisplayInfo
+     */
+    private static void warmDisplay(Context context) {
+        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+        if (windowManager == null)
+            return;
+        DisplayMetrics metrics = new DisplayMetrics();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1)
+            windowManager.getDefaultDisplay().getRealMetrics(metrics);
+        windowManager.getDefaultDisplay().getMetrics(metrics);
+    }
+
+    /**
+     * 调用方已经确认没有缓存，命中缓存时不创建Callable；并发创建时以先放入的为准
+     */
+    private static <V> FutureTask<V> task(ConcurrentHashMap<String, FutureTask<V>> tasks, String key,
+                                          Callable<V> callable) {
+        FutureTask<V> created = new FutureTask<>(callable);
+        FutureTask<V> task = tasks.putIfAbsent(key, created);
+        return task != null ? task : created;
+    }
+
+    /**
+     * 还没有线程执行时在当前线程执行，正在其他线程执行时等待结果
+     */
+    private static <V> V await(FutureTask<V> task, V defaultValue) {
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,26 @@
+package com.github.xingling.immersionlibrary;
+
+import android.app.Activity;
+
+/**
+ * SimpleImmersion.install()使用的规则，为匹配的Activity配置沉浸式参数
+ * Rule matching activities for the global installer.
+ */
+public interface ImmersionRule {
+
+    /**
+     * 是否由该规则处理，按install()时的顺序使用第一个匹配的规则
+     *
+     * @param activity the activity
+     * @return the boolean
+     */
+    boolean matches(Activity activity);
+
+    /**
+     * 配置参数，不需要调用init()
+     *
+     * @param activity  the activity
+     * @param immersion SimpleImmersion.with(activity)
+     */
+    void configure(Activity activity, SimpleImmersion immersion);
+}
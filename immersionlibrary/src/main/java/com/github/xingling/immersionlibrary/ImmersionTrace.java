@@ -0,0 +1,48 @@
+package com.github.xingling.immersionlibrary;
+
+import android.os.Trace;
+
+/**
+ * 为SimpleImmersion和KeyboardPatch的工作添加systrace/Perfetto中的命名区段，默认关闭
+ * Named android.os.Trace sections around immersion work.
+ * <p>
+ * 关闭时每个区段只有一次volatile读；begin返回的值需要原样传给end，保证中途开关时区段仍然成对。
+ */
+public final class ImmersionTrace {
+
+    private static volatile boolean sEnabled;
+
+    private ImmersionTrace() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * 开始一个区段
+     *
+     * @param name 区段名称
+     * @return 是否真正开始了区段
+     */
+    static boolean begin(String name) {
+        if (!sEnabled)
+            return false;
+        Trace.beginSection(name);
+        return true;
+    }
+
+    /**
+     * 结束区段
+     *
+     * @param begun begin的返回值
+     */
+    static void end(boolean begun) {
+        if (begun)
+            Trace.endSection();
+    }
+}
@@ -10,6 +10,8 @@ import android.view.Window;
 import android.view.WindowManager;
 import android.widget.FrameLayout;
 
+import com.github.xingling.immersioncore.KeyboardMath;
+
 /**
  * 解决底部输入框和软键盘的问题
  * Created by geyifeng on 2017/5/17.
@@ -30,10 +32,12 @@ public class KeyboardPatch {
     private int paddingBottom;
 
     private int keyboardHeightPrevious;
+    private int keyboardPaddingPrevious;
     private int statusBarHeight;
     private int actionBarHeight;
     private int navigationBarHeight;
     private boolean navigationAtBottom;
+    private boolean enabled;
 
     private KeyboardPatch(Activity activity) {
         this(activity, ((FrameLayout) activity.getWindow().getDecorView().findViewById(android.R.id.content)).getChildAt(0));
@@ -101,8 +105,19 @@ public class KeyboardPatch {
 
     public void enable(int mode) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            mWindow.setSoftInputMode(mode);
-            mDecorView.getViewTreeObserver().addOnGlobalLayoutListener(onGlobalLayoutListener);//当在一个视图树中全局布局发生改变或者视图树中的某个视图的可视状态发生改变时，所要调用的回调函数的接口类
+            boolean traced = ImmersionTrace.begin("KeyboardPatch#enable");
+            try {
+                if (mWindow.getAttributes().softInputMode != mode) {
+                    ImmersionMetrics.count(ImmersionMetrics.COUNTER_WINDOW_ATTRIBUTES);
+                    mWindow.setSoftInputMode(mode);
+                }
+                if (!enabled) {
+                    mDecorView.getViewTreeObserver().addOnGlobalLayoutListener(onGlobalLayoutListener);//当在一个视图树中全局布局发生改变或者视图树中的某个视图的可视状态发生改变时，所要调用的回调函数的接口类
+                    enabled = true;
+                }
+            } finally {
+                ImmersionTrace.end(traced);
+            }
         }
     }
 
@@ -116,86 +131,106 @@ public class KeyboardPatch {
 
     public void disable(int mode) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            mWindow.setSoftInputMode(mode);
-            mDecorView.getViewTreeObserver().removeOnGlobalLayoutListener(onGlobalLayoutListener);
+            boolean traced = ImmersionTrace.begin("KeyboardPatch#disable");
+            try {
+                if (mWindow.getAttributes().softInputMode != mode) {
+                    ImmersionMetrics.count(ImmersionMetrics.COUNTER_WINDOW_ATTRIBUTES);
+                    mWindow.setSoftInputMode(mode);
+                }
+                if (enabled) {
+                    mDecorView.getViewTreeObserver().removeOnGlobalLayoutListener(onGlobalLayoutListener);
+                    enabled = false;
+                }
+            } finally {
+                ImmersionTrace.end(traced);
+            }
         }
     }
 
+    int getKeyboardHeight() {
+        return keyboardHeightPrevious;
+    }
+
+    int getKeyboardPadding() {
+        return keyboardPaddingPrevious;
+    }
+
+    /**
+     * 界面重建时恢复之前的软键盘高度和padding，第一帧就是软键盘弹出时的布局，之后高度不变的布局回调不再修改padding
+     */
+    void restore(int keyboardHeight, int keyboardPadding) {
+        if (keyboardHeight == 0 || mBarParams.systemWindows || !navigationAtBottom)
+            return;
+        ImmersionMetrics.count(ImmersionMetrics.COUNTER_SET_PADDING);
+        if (mChildView != null)
+            mContentView.setPadding(paddingLeft, paddingTop, paddingRight, keyboardPadding + paddingBottom);
+        else
+            mContentView.setPadding(0, KeyboardMath.topInset(mBarParams.isSupportActionBar, mBarParams.fits,
+                    statusBarHeight, actionBarHeight), 0, keyboardPadding);
+        keyboardHeightPrevious = keyboardHeight;
+        keyboardPaddingPrevious = keyboardPadding;
+    }
+
     private ViewTreeObserver.OnGlobalLayoutListener onGlobalLayoutListener = new ViewTreeObserver.OnGlobalLayoutListener() {
         @Override
         public void onGlobalLayout() {
-            //如果布局根节点使用了android:fitsSystemWindows="true"属性或者导航栏不在底部，无需处理
-            if (!navigationAtBottom)
-                return;
-            Rect r = new Rect();
-            mDecorView.getWindowVisibleDisplayFrame(r); //获取当前窗口可视区域大小
-            int diff;
-            int keyboardHeight;
-            boolean isPopup = false;
-            if (mBarParams.systemWindows) {
-                keyboardHeight = mContentView.getHeight() - r.bottom - navigationBarHeight;
-                if (mBarParams.onKeyboardListener != null) {
-                    if (keyboardHeight > navigationBarHeight)
-                        isPopup = true;
-                    mBarParams.onKeyboardListener.onKeyboardChange(isPopup, keyboardHeight);
-                }
-                return;
-            }
-            if (mChildView != null) {
-                if (mBarParams.isSupportActionBar)
-                    diff = mContentView.getHeight() + statusBarHeight + actionBarHeight - r.bottom;
-                else if (mBarParams.fits)
-                    diff = mContentView.getHeight() + statusBarHeight - r.bottom;
-                else
-                    diff = mContentView.getHeight() - r.bottom;
-                if (mBarParams.fullScreen)
-                    keyboardHeight = diff - navigationBarHeight;
-                else
-                    keyboardHeight = diff;
-                if (mBarParams.fullScreen && diff == navigationBarHeight) {
-                    diff -= navigationBarHeight;
-                }
-                if (keyboardHeight != keyboardHeightPrevious) {
-                    mContentView.setPadding(paddingLeft, paddingTop, paddingRight, diff + paddingBottom);
-                    keyboardHeightPrevious = keyboardHeight;
-                    if (mBarParams.onKeyboardListener != null) {
-                        if (keyboardHeight > navigationBarHeight)
-                            isPopup = true;
-                        mBarParams.onKeyboardListener.onKeyboardChange(isPopup, keyboardHeight);
-                    }
-                }
-            } else {
-                diff = mContentView.getHeight() - r.bottom;
-
-                if (mBarParams.navigationBarEnable && mBarParams.navigationBarWithKitkatEnable) {
-                    if (Build.VERSION.SDK_INT == Build.VERSION_CODES.KITKAT || OSUtils.isEMUI3_1()) {
-                        keyboardHeight = diff - navigationBarHeight;
-                    } else {
-                        if (!mBarParams.fullScreen)
-                            keyboardHeight = diff;
-                        else
-                            keyboardHeight = diff - navigationBarHeight;
-                    }
-                    if (mBarParams.fullScreen && diff == navigationBarHeight)
-                        diff -= navigationBarHeight;
-                } else
-                    keyboardHeight = diff;
-                if (keyboardHeight != keyboardHeightPrevious) {
-                    if (mBarParams.isSupportActionBar) {
-                        mContentView.setPadding(0, statusBarHeight + actionBarHeight, 0, diff);
-                    } else if (mBarParams.fits) {
-                        mContentView.setPadding(0, statusBarHeight, 0, diff);
-                    } else
-                        mContentView.setPadding(0, 0, 0, diff);
-                    keyboardHeightPrevious = keyboardHeight;
-                    if (mBarParams.onKeyboardListener != null) {
-                        if (keyboardHeight > navigationBarHeight)
-                            isPopup = true;
-                        mBarParams.onKeyboardListener.onKeyboardChange(isPopup, keyboardHeight);
-                    }
-                }
+            ImmersionMetrics.count(ImmersionMetrics.COUNTER_KEYBOARD_DETECTOR);
+            boolean traced = ImmersionTrace.begin("KeyboardPatch#onGlobalLayout");
+            try {
+                detectKeyboard();
+            } finally {
+                ImmersionTrace.end(traced);
             }
         }
     };
 
+    /**
+     * 根据窗口可视区域计算软键盘高度，高度变化时调整contentView的paddingBottom
+     */
+    private void detectKeyboard() {
+        //如果布局根节点使用了android:fitsSystemWindows="true"属性或者导航栏不在底部，无需处理
+        if (!navigationAtBottom)
+            return;
+        Rect r = new Rect();
+        mDecorView.getWindowVisibleDisplayFrame(r); //获取当前窗口可视区域大小
+        int diff;
+        int keyboardHeight;
+        if (mBarParams.systemWindows) {
+            keyboardHeight = KeyboardMath.systemWindowsKeyboardHeight(mContentView.getHeight(), r.bottom,
+                    navigationBarHeight);
+            if (mBarParams.onKeyboardListener != null)
+                mBarParams.onKeyboardListener.onKeyboardChange(
+                        KeyboardMath.isPopup(keyboardHeight, navigationBarHeight), keyboardHeight);
+            return;
+        }
+        int topInset = KeyboardMath.topInset(mBarParams.isSupportActionBar, mBarParams.fits,
+                statusBarHeight, actionBarHeight);
+        if (mChildView != null) {
+            diff = KeyboardMath.childDiff(mContentView.getHeight(), r.bottom, topInset);
+            keyboardHeight = KeyboardMath.childKeyboardHeight(diff, navigationBarHeight, mBarParams.fullScreen);
+            diff = KeyboardMath.paddingBottom(diff, navigationBarHeight, mBarParams.fullScreen, true);
+        } else {
+            boolean navigationBarEnable = mBarParams.navigationBarEnable && mBarParams.navigationBarWithKitkatEnable;
+            diff = KeyboardMath.frameDiff(mContentView.getHeight(), r.bottom);
+            keyboardHeight = KeyboardMath.frameKeyboardHeight(diff, navigationBarHeight, mBarParams.fullScreen,
+                    navigationBarEnable,
+                    Build.VERSION.SDK_INT == Build.VERSION_CODES.KITKAT || OSUtils.isEMUI3_1());
+            diff = KeyboardMath.paddingBottom(diff, navigationBarHeight, mBarParams.fullScreen, navigationBarEnable);
+        }
+        if (keyboardHeight != keyboardHeightPrevious) {
+            ImmersionMetrics.count(ImmersionMetrics.COUNTER_SET_PADDING);
+            if (mChildView != null)
+                mContentView.setPadding(paddingLeft, paddingTop, paddingRight, diff + paddingBottom);
+            else
+                mContentView.setPadding(0, topInset, 0, diff);
+            keyboardHeightPrevious = keyboardHeight;
+            keyboardPaddingPrevious = diff;
+            ImmersionEventLog.record(ImmersionEventLog.EVENT_KEYBOARD_CHANGE, keyboardHeight);
+            ImmersionJankMonitor.mark(ImmersionJankMonitor.OP_KEYBOARD_PADDING);
+            if (mBarParams.onKeyboardListener != null)
+                mBarParams.onKeyboardListener.onKeyboardChange(
+                        KeyboardMath.isPopup(keyboardHeight, navigationBarHeight), keyboardHeight);
+        }
+    }
+
 }
@@ -3,7 +3,7 @@ package com.github.xingling.immersionlibrary;
 import android.os.Build;
 import android.text.TextUtils;
 
-import java.lang.reflect.Method;
+import com.github.xingling.immersioncore.RomVersions;
 
 /**
  * 手机系统判断
@@ -11,9 +11,9 @@ import java.lang.reflect.Method;
  */
 public class OSUtils {
 
-    private static final String KEY_MIUI_VERSION_NAME = "ro.miui.ui.version.name";
-    private static final String KEY_EMUI_VERSION_NAME = "ro.build.version.emui";
-    private static final String KEY_DISPLAY = "ro.build.display.id";
+    static final String KEY_MIUI_VERSION_NAME = "ro.miui.ui.version.name";
+    static final String KEY_EMUI_VERSION_NAME = "ro.build.version.emui";
+    static final String KEY_DISPLAY = "ro.build.display.id";
 
     /**
      * 判断是否为miui
@@ -33,17 +33,7 @@ public class OSUtils {
      * @return the boolean
      */
     public static boolean isMIUI6Later() {
-        String version = getMIUIVersion();
-        int num;
-        if ((!version.isEmpty())) {
-            try {
-                num = Integer.valueOf(version.substring(1));
-                return num >= 6;
-            } catch (NumberFormatException e) {
-                return false;
-            }
-        } else
-            return false;
+        return RomVersions.miuiVersion(getMIUIVersion()) >= 6;
     }
 
     /**
@@ -84,11 +74,7 @@ public class OSUtils {
      * @return the boolean
      */
     public static boolean isEMUI3_1() {
-        String property = getEMUIVersion();
-        if ("EmotionUI 3".equals(property) || property.contains("EmotionUI_3.1")) {
-            return true;
-        }
-        return false;
+        return RomVersions.isEMUI3_1(getEMUIVersion());
     }
 
     /**
@@ -98,11 +84,7 @@ public class OSUtils {
      * @return the boolean
      */
     public static boolean isEMUI3_0() {
-        String property = getEMUIVersion();
-        if (property.contains("EmotionUI_3.0")) {
-            return true;
-        }
-        return false;
+        return RomVersions.isEMUI3_0(getEMUIVersion());
     }
 
     /**
@@ -112,7 +94,7 @@ public class OSUtils {
      * @return the boolean
      */
     public static boolean isFlymeOS() {
-        return getFlymeOSFlag().toLowerCase().contains("flyme");
+        return RomVersions.isFlymeOS(getFlymeOSFlag());
     }
 
     /**
@@ -122,21 +104,7 @@ public class OSUtils {
      * @return the boolean
      */
     public static boolean isFlymeOS4Later() {
-        String version = getFlymeOSVersion();
-        int num;
-        if (!version.isEmpty()) {
-            try {
-                if (version.toLowerCase().contains("os")) {
-                    num = Integer.valueOf(version.substring(9, 10));
-                } else {
-                    num = Integer.valueOf(version.substring(6, 7));
-                }
-                return num >= 4;
-            } catch (NumberFormatException e) {
-                return false;
-            }
-        }
-        return false;
+        return RomVersions.flymeVersion(getFlymeOSVersion()) >= 4;
     }
 
     /**
@@ -146,21 +114,7 @@ public class OSUtils {
      * @return the boolean
      */
     public static boolean isFlymeOS5() {
-        String version = getFlymeOSVersion();
-        int num;
-        if (!version.isEmpty()) {
-            try {
-                if (version.toLowerCase().contains("os")) {
-                    num = Integer.valueOf(version.substring(9, 10));
-                } else {
-                    num = Integer.valueOf(version.substring(6, 7));
-                }
-                return num == 5;
-            } catch (NumberFormatException e) {
-                return false;
-            }
-        }
-        return false;
+        return RomVersions.flymeVersion(getFlymeOSVersion()) == 5;
     }
 
 
@@ -178,15 +132,12 @@ public class OSUtils {
         return getSystemProperty(KEY_DISPLAY, "");
     }
 
+    /**
+     * ro.*属性运行期间不会变化，由ImmersionProbes只读取一次
+     */
     private static String getSystemProperty(String key, String defaultValue) {
-        try {
-            Class<?> clz = Class.forName("android.os.SystemProperties");
-            Method get = clz.getMethod("get", String.class, String.class);
-            return (String) get.invoke(clz, key, defaultValue);
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return defaultValue;
+        String value = ImmersionProbes.systemProperty(key);
+        return value == null || value.isEmpty() ? defaultValue : value;
     }
 
     public static boolean isSupportStatusBarDarkFont() {
@@ -0,0 +1,211 @@
+package com.github.xingling.immersionlibrary;
+
+import android.database.DataSetObserver;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.app.Fragment;
+import android.support.v4.view.PagerAdapter;
+import android.support.v4.view.ViewPager;
+import android.util.SparseArray;
+
+import com.github.xingling.immersioncore.ColorMath;
+import com.github.xingling.immersioncore.ImmersionPlanner;
+
+/**
+ * ViewPager中每个页面的沉浸式参数，只在ViewPager停止滑动后应用一次
+ * Applies the settled page's immersion once per settle.
+ * <p>
+ * 页面通过SimpleImmersion.viewPager(pager, position).init()只记录参数，不立即生效；
+ * 预加载的页面和滑动中经过的页面不会触发init()。可选在滑动过程中按偏移量混合相邻两页的状态栏和导航栏颜色，不分配内存。
+ * <p>
+ * 页面是Fragment时，Fragment销毁视图时移除记录的参数（FragmentStatePagerAdapter回收页面不会调用destroy()）；
+ * adapter数据变化时按getItemPosition()移动或移除Fragment页面的参数。页面不是Fragment时需要在销毁时调用destroy()，
+ * 数据变化后重新init()。
+ */
+public final class PagerImmersion implements ViewPager.OnPageChangeListener, ViewPager.OnAdapterChangeListener {
+
+    private final ViewPager mViewPager;
+    private SparseArray<SimpleImmersion> mPages = new SparseArray<>();
+    private PagerAdapter mAdapter;
+    private final boolean mAboveLollipop;
+    private int mCurrent;
+    private int mScrollState = ViewPager.SCROLL_STATE_IDLE;
+    private SimpleImmersion mApplied;
+    private boolean mInterpolate;
+    private boolean mInterpolated;
+
+    private final DataSetObserver mDataSetObserver = new DataSetObserver() {
+        @Override
+        public void onChanged() {
+            onDataSetChanged();
+        }
+    };
+
+    private PagerImmersion(ViewPager viewPager) {
+        mViewPager = viewPager;
+        mCurrent = viewPager.getCurrentItem();
+        mAboveLollipop = ImmersionPlanner.isAboveLollipop(Build.VERSION.SDK_INT, OSUtils.isEMUI3_1());
+    }
+
+    /**
+     * 得到ViewPager的PagerImmersion，第一次调用时创建并监听页面切换
+     * With view pager.
+     *
+     * @param viewPager the view pager
+     */
+    public static PagerImmersion with(ViewPager viewPager) {
+        if (viewPager == null)
+            throw new IllegalArgumentException("ViewPager不能为null");
+        PagerImmersion pagerImmersion = (PagerImmersion) viewPager.getTag(R.id.immersion_pager);
+        if (pagerImmersion == null) {
+            pagerImmersion = new PagerImmersion(viewPager);
+            viewPager.addOnPageChangeListener(pagerImmersion);
+            viewPager.addOnAdapterChangeListener(pagerImmersion);
+            pagerImmersion.observe(viewPager.getAdapter());
+            viewPager.setTag(R.id.immersion_pager, pagerImmersion);
+        }
+        return pagerImmersion;
+    }
+
+    /**
+     * 滑动过程中是否按偏移量混合相邻两页的颜色，默认不混合
+     * Interpolate colors.
+     *
+     * @param interpolate the interpolate
+     */
+    public PagerImmersion interpolateColors(boolean interpolate) {
+        mInterpolate = interpolate;
+        return this;
+    }
+
+    /**
+     * 取消监听并清除记录的参数
+     * Release.
+     */
+    public void release() {
+        mViewPager.removeOnPageChangeListener(this);
+        mViewPager.removeOnAdapterChangeListener(this);
+        observe(null);
+        mViewPager.setTag(R.id.immersion_pager, null);
+        mPages.clear();
+        mApplied = null;
+    }
+
+    /**
+     * 记录页面的参数，页面是当前页且ViewPager没有滑动时立即生效
+     */
+    void record(int position, SimpleImmersion immersion) {
+        mPages.put(position, immersion);
+        if (position == mCurrent && mScrollState == ViewPager.SCROLL_STATE_IDLE)
+            settle();
+    }
+
+    /**
+     * 页面销毁时移除，只移除同一个实例，避免移除页面重建后新记录的参数
+     */
+    void remove(int position, SimpleImmersion immersion) {
+        if (mPages.get(position) == immersion)
+            mPages.remove(position);
+        if (mApplied == immersion)
+            mApplied = null;
+    }
+
+    /**
+     * Fragment页面的视图销毁时移除其参数，由Fragment栈的生命周期监听调用
+     */
+    void remove(Fragment fragment) {
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            SimpleImmersion immersion = mPages.valueAt(i);
+            if (immersion.getFragment() == fragment) {
+                mPages.removeAt(i);
+                if (mApplied == immersion)
+                    mApplied = null;
+            }
+        }
+    }
+
+    /**
+     * adapter数据变化，与ViewPager一样按getItemPosition()移动Fragment页面的参数，POSITION_NONE的页面移除
+     */
+    private void onDataSetChanged() {
+        PagerAdapter adapter = mAdapter;
+        if (adapter == null || mPages.size() == 0)
+            return;
+        SparseArray<SimpleImmersion> pages = new SparseArray<>(mPages.size());
+        for (int i = 0, size = mPages.size(); i < size; i++) {
+            SimpleImmersion immersion = mPages.valueAt(i);
+            Fragment fragment = immersion.getFragment();
+            int position = fragment != null ? adapter.getItemPosition(fragment) : PagerAdapter.POSITION_UNCHANGED;
+            if (position == PagerAdapter.POSITION_NONE) {
+                if (mApplied == immersion)
+                    mApplied = null;
+                continue;
+            }
+            pages.put(position == PagerAdapter.POSITION_UNCHANGED ? mPages.keyAt(i) : position, immersion);
+        }
+        mPages = pages;
+    }
+
+    @Override
+    public void onAdapterChanged(@NonNull ViewPager viewPager, @Nullable PagerAdapter oldAdapter,
+                                 @Nullable PagerAdapter newAdapter) {
+        mPages.clear();
+        mApplied = null;
+        observe(newAdapter);
+    }
+
+    private void observe(PagerAdapter adapter) {
+        if (mAdapter != null)
+            mAdapter.unregisterDataSetObserver(mDataSetObserver);
+        mAdapter = adapter;
+        if (adapter != null)
+            adapter.registerDataSetObserver(mDataSetObserver);
+    }
+
+    @Override
+    public void onPageScrolled(int position, float positionOffset, int positionOffsetPixels) {
+        if (!mInterpolate || mApplied == null || positionOffset == 0)
+            return;
+        SimpleImmersion left = mPages.get(position);
+        SimpleImmersion right = mPages.get(position + 1);
+        if (left == null || right == null)
+            return;
+        mInterpolated = true;
+        mApplied.applyBarColors(mAboveLollipop,
+                ColorMath.blendARGB(left.resolvedStatusBarColor(), right.resolvedStatusBarColor(), positionOffset),
+                ColorMath.blendARGB(left.resolvedNavigationBarColor(mAboveLollipop),
+                        right.resolvedNavigationBarColor(mAboveLollipop), positionOffset));
+    }
+
+    @Override
+    public void onPageSelected(int position) {
+        mCurrent = position;
+        if (mScrollState == ViewPager.SCROLL_STATE_IDLE)  //没有滑动的setCurrentItem()
+            settle();
+    }
+
+    @Override
+    public void onPageScrollStateChanged(int state) {
+        mScrollState = state;
+        if (state == ViewPager.SCROLL_STATE_IDLE)
+            settle();
+    }
+
+    /**
+     * 停止滑动后应用当前页的参数，窗口颜色被混合过时再按当前页的参数恢复颜色
+     * （与之前的参数相比颜色相同时init()不会更新颜色）
+     */
+    private void settle() {
+        SimpleImmersion immersion = mPages.get(mCurrent);
+        if (immersion == null)
+            return;
+        if (immersion != mApplied) {
+            mApplied = immersion;
+            immersion.initNow();
+        }
+        if (mInterpolated)
+            immersion.updateColors();
+        mInterpolated = false;
+    }
+}
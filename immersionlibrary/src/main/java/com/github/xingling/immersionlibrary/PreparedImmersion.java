@@ -0,0 +1,85 @@
+package com.github.xingling.immersionlibrary;
+
+import android.app.Activity;
+import android.os.Looper;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * SimpleImmersion.prepareAsync()的结果，后台线程已经读取了rom信息和状态栏、导航栏尺寸，
+ * commit()在主线程只执行window和view的修改
+ * Immersion prepared off the main thread.
+ */
+public final class PreparedImmersion {
+
+    private final Activity mActivity;
+    private final BarParams mParams;
+    private final FutureTask<BarConfig> mTask;
+    private SimpleImmersion mImmersion;
+
+    PreparedImmersion(final Activity activity, BarParams params) {
+        mActivity = activity;
+        mParams = params;
+        mTask = new FutureTask<>(new Callable<BarConfig>() {
+            @Override
+            public BarConfig call() {
+                boolean traced = ImmersionTrace.begin("PreparedImmersion#prepare");
+                try {
+                    //读取并缓存rom信息，主线程上再次判断时不再反射
+                    OSUtils.isEMUI3_1();
+                    OSUtils.isEMUI3_0();
+                    OSUtils.isMIUI6Later();
+                    OSUtils.isFlymeOS4Later();
+                    return new BarConfig(activity);
+                } finally {
+                    ImmersionTrace.end(traced);
+                }
+            }
+        });
+        ImmersionExecutor.get().execute(mTask);
+    }
+
+    /**
+     * 后台准备是否已经完成，完成后commit()不会阻塞
+     *
+     * @return the boolean
+     */
+    public boolean isReady() {
+        return mTask.isDone();
+    }
+
+    /**
+     * 在主线程调用，等待后台准备完成后初始化沉浸式，重复调用返回同一个实例且不会重复初始化
+     * Commit.
+     *
+     * @return 已初始化的SimpleImmersion，可以继续调用updateColors()和destroy()
+     */
+    public SimpleImmersion commit() {
+        if (Looper.myLooper() != Looper.getMainLooper())
+            throw new IllegalStateException("commit()必须在主线程调用");
+        if (mImmersion == null) {
+            mImmersion = SimpleImmersion.prepared(mActivity, awaitConfig(), mParams);
+            mImmersion.init();
+        }
+        return mImmersion;
+    }
+
+    /**
+     * 后台线程还没有开始准备时（例如排在prewarm之后）直接在主线程执行，不等待队列；
+     * 正在执行时等待结果。后台准备失败时返回null，由SimpleImmersion在主线程重新读取
+     */
+    private BarConfig awaitConfig() {
+        mTask.run();
+        try {
+            return mTask.get();
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+}
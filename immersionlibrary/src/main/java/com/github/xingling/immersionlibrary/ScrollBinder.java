@@ -0,0 +1,169 @@
+package com.github.xingling.immersionlibrary;
+
+import android.os.Build;
+import android.support.v4.view.ScrollingView;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import com.github.xingling.immersioncore.ColorMath;
+import com.github.xingling.immersioncore.ImmersionPlanner;
+
+import java.util.Map;
+
+/**
+ * 根据滑动距离改变状态栏透明度和变色view的颜色，每帧最多更新一次
+ * Binds the status bar alpha to a scroll offset range.
+ * <p>
+ * 在绘制前读取滑动距离，一帧内的多次滑动只更新一次，距离没有变化时不更新；更新只修改透明度并直接设置颜色，不分配内存。
+ * 滑动距离为RecyclerView、NestedScrollView的computeVerticalScrollOffset()（其他View为scrollY），
+ * 加上View相对第一次布局位置向上移动的距离，所以AppBarLayout折叠和CoordinatorLayout中内容随AppBarLayout上移也会计入。
+ * 变色view在绑定时从SimpleImmersion中读取，之后添加的变色view需要重新绑定；View离开窗口时自动解除绑定。
+ */
+public final class ScrollBinder implements ViewTreeObserver.OnPreDrawListener, View.OnAttachStateChangeListener {
+
+    private final SimpleImmersion mImmersion;
+    private final View mView;
+    private final ScrollingView mScrollingView;
+    private final int mStartPx;
+    private final int mEndPx;
+    private final boolean mAboveLollipop;
+    private final View[] mTransformViews;
+    private final int[] mColorsBefore;
+    private final int[] mColorsAfter;
+    private ViewTreeObserver mObserver;
+    private boolean mHasBaseline;
+    private int mBaselineTop;
+    private float mProgress = -1;
+
+    private ScrollBinder(SimpleImmersion immersion, View view, int startPx, int endPx) {
+        mImmersion = immersion;
+        mView = view;
+        mScrollingView = view instanceof ScrollingView ? (ScrollingView) view : null;
+        mStartPx = startPx;
+        mEndPx = endPx;
+        mAboveLollipop = ImmersionPlanner.isAboveLollipop(Build.VERSION.SDK_INT, OSUtils.isEMUI3_1());
+        BarParams barParams = immersion.getBarParams();
+        //单独设置了viewAlpha的变色view不随滑动变化
+        int size = barParams.viewAlpha == 0 ? barParams.viewMap.size() : 0;
+        mTransformViews = new View[size];
+        mColorsBefore = new int[size];
+        mColorsAfter = new int[size];
+        if (size != 0) {
+            int i = 0;
+            for (Map.Entry<View, Map<Integer, Integer>> entry : barParams.viewMap.entrySet()) {
+                int colorBefore = barParams.statusBarColor;
+                int colorAfter = barParams.statusBarColorTransform;
+                for (Map.Entry<Integer, Integer> integerEntry : entry.getValue().entrySet()) {
+                    colorBefore = integerEntry.getKey();
+                    colorAfter = integerEntry.getValue();
+                }
+                mTransformViews[i] = entry.getKey();
+                mColorsBefore[i] = colorBefore;
+                mColorsAfter[i] = colorAfter;
+                i++;
+            }
+        }
+    }
+
+    /**
+     * 滑动距离从startPx到endPx时状态栏透明度从0变为1，需要先设置statusBarColorTransform并init()，
+     * 同一个View重复绑定时替换之前的绑定
+     * Bind.
+     *
+     * @param immersion the immersion
+     * @param view      RecyclerView、NestedScrollView、ScrollView或AppBarLayout
+     * @param startPx   开始变色的滑动距离
+     * @param endPx     完成变色的滑动距离
+     */
+    public static ScrollBinder bind(SimpleImmersion immersion, View view, int startPx, int endPx) {
+        if (immersion == null)
+            throw new IllegalArgumentException("SimpleImmersion不能为null");
+        if (view == null)
+            throw new IllegalArgumentException("View不能为null");
+        if (endPx <= startPx)
+            throw new IllegalArgumentException("endPx必须大于startPx");
+        ScrollBinder previous = (ScrollBinder) view.getTag(R.id.immersion_scroll_binder);
+        if (previous != null)
+            previous.unbind();
+        ScrollBinder scrollBinder = new ScrollBinder(immersion, view, startPx, endPx);
+        view.setTag(R.id.immersion_scroll_binder, scrollBinder);
+        view.addOnAttachStateChangeListener(scrollBinder);
+        if (view.isAttachedToWindow())
+            scrollBinder.listen();
+        return scrollBinder;
+    }
+
+    /**
+     * 解除绑定，状态栏保持当前的颜色
+     * Unbind.
+     */
+    public void unbind() {
+        mView.removeOnAttachStateChangeListener(this);
+        if (mView.getTag(R.id.immersion_scroll_binder) == this)
+            mView.setTag(R.id.immersion_scroll_binder, null);
+        if (mObserver != null && mObserver.isAlive())
+            mObserver.removeOnPreDrawListener(this);
+        mObserver = null;
+    }
+
+    /**
+     * 当前的变色进度
+     * Gets progress.
+     *
+     * @return 0到1，还没有更新过时为-1
+     */
+    public float getProgress() {
+        return mProgress;
+    }
+
+    @Override
+    public void onViewAttachedToWindow(View v) {
+        listen();
+    }
+
+    @Override
+    public void onViewDetachedFromWindow(View v) {
+        unbind();
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        if (!mView.isLaidOut())
+            return true;
+        int top = mView.getTop();
+        if (!mHasBaseline) {
+            mHasBaseline = true;
+            mBaselineTop = top;
+        }
+        int offset = (mScrollingView != null ? mScrollingView.computeVerticalScrollOffset() : mView.getScrollY())
+                + mBaselineTop - top;
+        float progress = Math.min(Math.max((float) (offset - mStartPx) / (mEndPx - mStartPx), 0f), 1f);
+        if (progress != mProgress) {
+            mProgress = progress;
+            apply(progress);
+        }
+        return true;
+    }
+
+    /**
+     * 必须在View attach之后获取ViewTreeObserver，attach之前的ViewTreeObserver会被合并后失效
+     */
+    private void listen() {
+        if (mObserver != null)
+            return;
+        mObserver = mView.getViewTreeObserver();
+        mObserver.addOnPreDrawListener(this);
+    }
+
+    private void apply(float progress) {
+        boolean traced = ImmersionTrace.begin("SimpleImmersion#scrollProgress");
+        try {
+            mImmersion.applyStatusBarAlpha(mAboveLollipop, progress);
+            for (int i = 0; i < mTransformViews.length; i++) {
+                mTransformViews[i].setBackgroundColor(ColorMath.blendARGB(mColorsBefore[i], mColorsAfter[i], progress));
+            }
+        } finally {
+            ImmersionTrace.end(traced);
+        }
+    }
+}
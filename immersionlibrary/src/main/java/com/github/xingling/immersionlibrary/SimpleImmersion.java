@@ -2,31 +2,38 @@ package com.github.xingling.immersionlibrary;
 
 import android.annotation.TargetApi;
 import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
 import android.database.ContentObserver;
+import android.graphics.Bitmap;
 import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.Handler;
 import android.provider.Settings;
 import android.support.annotation.ColorInt;
 import android.support.annotation.ColorRes;
 import android.support.annotation.FloatRange;
 import android.support.annotation.NonNull;
-import android.support.annotation.RequiresApi;
 import android.support.v4.app.Fragment;
 import android.support.v4.content.ContextCompat;
-import android.support.v4.graphics.ColorUtils;
+import android.support.v4.view.ViewPager;
 import android.support.v4.widget.DrawerLayout;
 import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.ViewTreeObserver;
 import android.view.Window;
-import android.view.WindowManager;
 import android.widget.FrameLayout;
 
+import com.github.xingling.immersioncore.ApplyPlan;
+import com.github.xingling.immersioncore.ColorMath;
+import com.github.xingling.immersioncore.ImmersionPlanner;
+import com.github.xingling.immersioncore.PlanInput;
+
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.util.Map;
 import java.util.Set;
 
@@ -39,14 +46,28 @@ public class SimpleImmersion {
     private Window mWindow;
     private ViewGroup mDecorView;
     private ViewGroup mContentView;
+    private final PlanInput mPlanInput = new PlanInput();
+    private WindowTransaction mTransaction;
+    private WeakReference<Fragment> mFragmentReference;
+    private PagerImmersion mPagerImmersion;
+    private int mPagerPosition;
 
     private static final String NAVIGATIONBAR_IS_MIN = "navigationbar_is_min";
+    private static final String[] PHASE_SECTIONS = {"SimpleImmersion#initBar", "SimpleImmersion#setStatusBarView",
+            "SimpleImmersion#transformView", "SimpleImmersion#keyboardEnable", "SimpleImmersion#registerEMUI3_x"};
+    private static volatile ImmersionIndex[] sIndexes = new ImmersionIndex[0];
 
     private SimpleImmersion(Activity activity) {
         WeakReference<Activity> activityWeakReference = new WeakReference<>(activity);
         mActivity = activityWeakReference.get();
         mWindow = mActivity.getWindow();
-        initParams();
+        initParams(null, null);
+    }
+
+    private SimpleImmersion(Activity activity, BarConfig config, BarParams params) {
+        mActivity = activity;
+        mWindow = mActivity.getWindow();
+        initParams(config, params);
     }
 
     private SimpleImmersion(Fragment fragment) {
@@ -58,21 +79,30 @@ public class SimpleImmersion {
             throw new IllegalArgumentException("Activity不能为空!!!");
         }
         WeakReference<Activity> activityWeakReference = new WeakReference<>(activity);
-        WeakReference<Fragment> fragmentWeakReference = new WeakReference<>(fragment);
+        mFragmentReference = new WeakReference<>(fragment);
         mActivity = activityWeakReference.get();
         mWindow = mActivity.getWindow();
-        initParams();
+        initParams(null, null);
     }
 
     /**
      * 初始化沉浸式默认参数
      * Init params.
+     *
+     * @param config 后台线程准备好的尺寸信息，为null时在当前线程读取
+     * @param params 使用的参数，为null时使用主题中声明的配置
      */
-    private void initParams() {
-        mDecorView = (ViewGroup) mWindow.getDecorView();
-        mContentView = mDecorView.findViewById(android.R.id.content);
-        mConfig = new BarConfig(mActivity);
-        mBarParams = new BarParams();
+    private void initParams(BarConfig config, BarParams params) {
+        boolean traced = ImmersionTrace.begin("SimpleImmersion#with");
+        try {
+            mDecorView = (ViewGroup) mWindow.getDecorView();
+            mContentView = mDecorView.findViewById(android.R.id.content);
+            mConfig = config != null ? config : new BarConfig(mActivity);
+            mBarParams = params != null ? params : ThemeTemplates.newBarParams(mActivity);  //主题中声明的配置作为默认参数
+            mTransaction = new WindowTransaction(mWindow);
+        } finally {
+            ImmersionTrace.end(traced);
+        }
     }
 
     /**
@@ -87,6 +117,92 @@ public class SimpleImmersion {
         return new SimpleImmersion(activity);
     }
 
+    /**
+     * 界面重建时使用，恢复saveInstanceState()保存的参数，屏幕尺寸不变时不再重新测量标题栏和软键盘；
+     * 标题栏等View仍需要重新设置
+     * With immersion bar.
+     *
+     * @param activity           the activity
+     * @param savedInstanceState onCreate()的参数，为null时与with(activity)相同
+     */
+    public static SimpleImmersion with(@NonNull Activity activity, Bundle savedInstanceState) {
+        SimpleImmersion immersion = with(activity);
+        if (savedInstanceState != null)
+            BarState.restore(savedInstanceState, immersion.mBarParams, activity.getResources().getConfiguration());
+        return immersion;
+    }
+
+    /**
+     * 在Activity的onSaveInstanceState()中调用，把最后一次init()生效的参数打包保存；
+     * 软键盘高度只在配置变化重建时保存，进程被回收后重建时软键盘已经收起，恢复旧的padding只会多一次布局
+     * Save instance state.
+     *
+     * @param activity the activity
+     * @param outState the out state
+     */
+    public static void saveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+        if (activity == null)
+            throw new IllegalArgumentException("Activity不能为null");
+        View decorView = activity.getWindow().getDecorView();
+        BarParams barParams = (BarParams) decorView.getTag(R.id.immersion_activity_params);
+        if (barParams != null)
+            BarState.save(outState, barParams, activity.isChangingConfigurations()
+                            ? (KeyboardPatch) decorView.getTag(R.id.immersion_keyboard_patch) : null,
+                    activity.getResources().getConfiguration());
+    }
+
+    /**
+     * 在Activity的onMultiWindowModeChanged()中调用，清除所在屏幕缓存的尺寸，按新的窗口重新应用当前生效的参数；
+     * Fragment栈顶的参数生效时重新应用Fragment的参数，否则重新应用Activity最后一次init()的参数
+     * On multi window mode changed.
+     *
+     * @param activity the activity
+     */
+    public static void onMultiWindowModeChanged(@NonNull Activity activity) {
+        if (activity == null)
+            throw new IllegalArgumentException("Activity不能为null");
+        DisplayGeometry.invalidate(activity.getWindowManager().getDefaultDisplay().getDisplayId());
+        reapply(activity, 0);
+    }
+
+    /**
+     * 窗口尺寸变化后重新应用当前生效的参数，Fragment栈顶的参数生效时重新应用Fragment的参数
+     *
+     * @param titleBarOffset 状态栏高度的变化，已经适配过的标题栏高度和paddingTop按这个值调整
+     */
+    static void reapply(Activity activity, int titleBarOffset) {
+        View decorView = activity.getWindow().getDecorView();
+        BarParams barParams = (BarParams) decorView.getTag(R.id.immersion_activity_params);
+        SimpleImmersion immersion = barParams != null ? restore(activity, barParams).refitTitleBar(titleBarOffset) : null;
+        FragmentImmersionStack stack = (FragmentImmersionStack) decorView.getTag(R.id.immersion_fragment_stack);
+        if (stack != null && stack.reapply(titleBarOffset))
+            return;
+        if (immersion != null)
+            immersion.init();
+    }
+
+    /**
+     * 按状态栏高度的变化调整已经记录的标题栏尺寸后重新适配标题栏，标题栏只在titleBar()中适配，init()不会重新适配
+     */
+    SimpleImmersion refitTitleBar(int titleBarOffset) {
+        TitleBarFitter.offset(mBarParams, titleBarOffset);
+        setTitleBar();
+        return this;
+    }
+
+    /**
+     * 刘海屏的安全区域和刘海的位置，从窗口自身的insets读取，窗口attach之前或9.0以下返回CutoutInsets.NONE
+     * Gets cutout.
+     *
+     * @param activity the activity
+     * @return the cutout insets
+     */
+    public static CutoutInsets getCutout(@NonNull Activity activity) {
+        if (activity == null)
+            throw new IllegalArgumentException("Activity不能为null");
+        return WindowCutout.get(activity.getWindow());
+    }
+
     /**
      * 调用该方法必须保证加载Fragment的Activity先初始化,已过时，使用with(Activity activity, Fragment fragment)方法
      * With immersion bar.
@@ -99,6 +215,14 @@ public class SimpleImmersion {
         return new SimpleImmersion(fragment);
     }
 
+    /**
+     * 初始化Fragment，init()时参数压入窗口的Fragment栈；使用show()/hide()或setUserVisibleHint()切换的Fragment
+     * 需要在onHiddenChanged(false)和setUserVisibleHint(true)中重新init()
+     * With immersion bar.
+     *
+     * @param activity the activity
+     * @param fragment the fragment
+     */
     public static SimpleImmersion with(@NonNull Activity activity, @NonNull Fragment fragment) {
         if (activity == null)
             throw new IllegalArgumentException("Activity不能为null");
@@ -107,6 +231,118 @@ public class SimpleImmersion {
         return new SimpleImmersion(activity, fragment);
     }
 
+    /**
+     * 在后台线程预先执行第一次init()需要的反射：rom系统属性、com.android.internal.R$dimen、
+     * FlymeOSStatusBarFontUtils的静态初始化和屏幕尺寸查询，一般在Application的onCreate()中调用。
+     * init()需要的值还没有准备好时只等待那一个值
+     * Prewarm.
+     *
+     * @param context the context
+     */
+    public static void prewarm(@NonNull Context context) {
+        if (context == null)
+            throw new IllegalArgumentException("Context不能为null");
+        ImmersionProbes.prewarm(context.getApplicationContext());
+    }
+
+    /**
+     * 在后台线程读取rom信息和状态栏、导航栏尺寸，返回的PreparedImmersion在主线程commit()时只修改window和view，
+     * 可以在setContentView()之前或AsyncLayoutInflater加载布局的同时调用
+     * Prepare async.
+     *
+     * @param activity the activity
+     * @param params   沉浸式参数，commit()之前不要再修改，为null时使用主题中声明的配置
+     */
+    public static PreparedImmersion prepareAsync(@NonNull Activity activity, BarParams params) {
+        if (activity == null)
+            throw new IllegalArgumentException("Activity不能为null");
+        return new PreparedImmersion(activity, params);
+    }
+
+    /**
+     * PreparedImmersion.commit()使用，标题栏在参数中时按titleBar()同样的方式适配
+     */
+    static SimpleImmersion prepared(Activity activity, BarConfig config, BarParams params) {
+        SimpleImmersion immersion = new SimpleImmersion(activity, config, params);
+        if (immersion.mBarParams.titleBarView != null)
+            immersion.setTitleBar();
+        return immersion;
+    }
+
+    /**
+     * FragmentImmersionStack出栈到空时使用，恢复Activity最后一次init()的参数
+     */
+    static SimpleImmersion restore(Activity activity, BarParams params) {
+        return new SimpleImmersion(activity, null, params);
+    }
+
+    /**
+     * 为匹配规则的Activity自动初始化沉浸式，在第一次布局之前生效，一般在Application的onCreate()中调用，
+     * 重复调用时替换之前的规则
+     * Install.
+     *
+     * @param application the application
+     * @param rules       按顺序使用第一个匹配的规则
+     */
+    public static void install(@NonNull Application application, @NonNull ImmersionRule... rules) {
+        if (application == null)
+            throw new IllegalArgumentException("Application不能为null");
+        if (rules == null)
+            throw new IllegalArgumentException("ImmersionRule不能为null");
+        ImmersionInstaller.install(application, rules);
+    }
+
+    /**
+     * 匹配主题中声明了沉浸式属性（immersionStatusBarColor等）的Activity，按主题的配置自动初始化，
+     * 与install()一起使用，可以放在其他规则之后作为默认规则
+     * Theme rule.
+     *
+     * @return the immersion rule
+     */
+    public static ImmersionRule themeRule() {
+        return ThemeTemplates.RULE;
+    }
+
+    /**
+     * 取消install()
+     * Uninstall.
+     */
+    public static void uninstall() {
+        ImmersionInstaller.uninstall();
+    }
+
+    /**
+     * 注册immersion-compiler生成的索引，一般在Application的onCreate()中调用
+     * Add index.
+     *
+     * @param index 生成的索引
+     */
+    public static synchronized void addIndex(@NonNull ImmersionIndex index) {
+        if (index == null)
+            throw new IllegalArgumentException("ImmersionIndex不能为null");
+        ImmersionIndex[] indexes = new ImmersionIndex[sIndexes.length + 1];
+        System.arraycopy(sIndexes, 0, indexes, 0, sIndexes.length);
+        indexes[sIndexes.length] = index;
+        sIndexes = indexes;
+    }
+
+    /**
+     * 按@Immersion注解在编译期生成的配置初始化，在setContentView()之后调用
+     * Init from index.
+     *
+     * @param activity the activity
+     * @return 找到了该Activity的配置返回true
+     */
+    public static boolean initFromIndex(@NonNull Activity activity) {
+        if (activity == null)
+            throw new IllegalArgumentException("Activity不能为null");
+        for (ImmersionIndex index : sIndexes) {
+            if (index.apply(activity))
+                return true;
+        }
+        return false;
+    }
+
     /**
      * 透明状态栏，默认透明
      */
@@ -155,6 +391,35 @@ public class SimpleImmersion {
         return this;
     }
 
+    /**
+     * 用图片上边缘和下边缘的颜色作为状态栏和导航栏颜色，相同key的结果会被缓存；
+     * 命中缓存时颜色在init()中生效，否则在后台提取完成后写入参数，该参数仍是窗口当前生效的参数时通过updateColors()生效；
+     * 提取期间不持有Activity和该实例的强引用
+     * Bar color from bitmap.
+     *
+     * @param bitmap 图片，如标题图片
+     * @param key    图片的标识，如图片地址
+     */
+    public SimpleImmersion barColorFromBitmap(Bitmap bitmap, String key) {
+        BarColorTarget target = new BarColorTarget(this);
+        if (!BarColorExtractor.extract(bitmap, key, target))
+            target.mPending = true;
+        return this;
+    }
+
+    /**
+     * ViewPager中的页面使用，init()只记录参数，ViewPager停止在该页面时才生效
+     * View pager.
+     *
+     * @param viewPager 页面所在的ViewPager
+     * @param position  页面的位置
+     */
+    public SimpleImmersion viewPager(ViewPager viewPager, int position) {
+        mPagerImmersion = PagerImmersion.with(viewPager);
+        mPagerPosition = position;
+        return this;
+    }
+
     public SimpleImmersion fullScreen(boolean isFullScreen) {
         mBarParams.fullScreen = isFullScreen;
         return this;
@@ -176,11 +441,40 @@ public class SimpleImmersion {
         return this;
     }
 
+    /**
+     * 根据状态栏下方内容的亮度自动切换状态栏字体颜色，需要系统支持深色字体（6.0以上、MIUI6以上或Flyme4以上）
+     * Auto dark font.
+     */
+    public SimpleImmersion autoDarkFont() {
+        return autoDarkFont(true);
+    }
+
+    public SimpleImmersion autoDarkFont(boolean enable) {
+        mBarParams.autoDarkFont = enable;
+        return this;
+    }
+
     public SimpleImmersion fitsSystemWindows(boolean fits) {
         mBarParams.fits = fits;
         return this;
     }
 
+    /**
+     * 解决软键盘与底部输入框冲突问题
+     * Keyboard enable.
+     *
+     * @param enable the enable
+     */
+    public SimpleImmersion keyboardEnable(boolean enable) {
+        return keyboardEnable(enable, mBarParams.keyboardMode);
+    }
+
+    public SimpleImmersion keyboardEnable(boolean enable, int keyboardMode) {
+        mBarParams.keyboardEnable = enable;
+        mBarParams.keyboardMode = keyboardMode;
+        return this;
+    }
+
     public SimpleImmersion titleBar(View view) {
         if (view == null) {
             throw new IllegalArgumentException("View参数不能为空");
@@ -200,90 +494,256 @@ public class SimpleImmersion {
 
     private void setTitleBar() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && mBarParams.titleBarView != null) {
-            final ViewGroup.LayoutParams layoutParams = mBarParams.titleBarView.getLayoutParams();
-            if (layoutParams.height == ViewGroup.LayoutParams.WRAP_CONTENT ||
-                    layoutParams.height == ViewGroup.LayoutParams.MATCH_PARENT) {
-                mBarParams.titleBarView.getViewTreeObserver().addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
-                    @Override
-                    public void onGlobalLayout() {
-                        mBarParams.titleBarView.getViewTreeObserver().removeOnGlobalLayoutListener(this);
-                        if (mBarParams.titleBarHeight == 0)
-                            mBarParams.titleBarHeight = mBarParams.titleBarView.getHeight() + mConfig.getStatusBarHeight();
-                        if (mBarParams.titleBarPaddingTopHeight == 0)
-                            mBarParams.titleBarPaddingTopHeight = mBarParams.titleBarView.getPaddingTop()
-                                    + mConfig.getStatusBarHeight();
-                        layoutParams.height = mBarParams.titleBarHeight;
-                        mBarParams.titleBarView.setPadding(mBarParams.titleBarView.getPaddingLeft(),
-                                mBarParams.titleBarPaddingTopHeight,
-                                mBarParams.titleBarView.getPaddingRight(),
-                                mBarParams.titleBarView.getPaddingBottom());
-                        mBarParams.titleBarView.setLayoutParams(layoutParams);
-                    }
-                });
-            } else {
-                if (mBarParams.titleBarHeight == 0)
-                    mBarParams.titleBarHeight = layoutParams.height + mConfig.getStatusBarHeight();
-                if (mBarParams.titleBarPaddingTopHeight == 0)
-                    mBarParams.titleBarPaddingTopHeight = mBarParams.titleBarView.getPaddingTop()
-                            + mConfig.getStatusBarHeight();
-                layoutParams.height = mBarParams.titleBarHeight;
-                mBarParams.titleBarView.setPadding(mBarParams.titleBarView.getPaddingLeft(),
-                        mBarParams.titleBarPaddingTopHeight,
-                        mBarParams.titleBarView.getPaddingRight(),
-                        mBarParams.titleBarView.getPaddingBottom());
-                mBarParams.titleBarView.setLayoutParams(layoutParams);
+            boolean traced = ImmersionTrace.begin("SimpleImmersion#titleBar");
+            try {
+                TitleBarFitter.fit(mActivity, mBarParams.titleBarView, mConfig.getStatusBarHeight(), mBarParams);
+            } finally {
+                ImmersionTrace.end(traced);
             }
         }
     }
 
     /**
-     * 通过上面配置后初始化后方可成功调用
+     * 通过上面配置后初始化后方可成功调用；
+     * 通过with(activity, fragment)创建时参数压入窗口的Fragment栈，与当前生效的参数相比只有颜色不同时只更新颜色；
+     * 设置了viewPager()时只记录参数，ViewPager停止在该页面时才生效
      */
     public void init() {
-        initBar();   //初始化沉浸式
-        setStatusBarView();  //通过状态栏高度动态设置状态栏布局
-        transformView();  //变色view
-        keyboardEnable();  //解决软键盘与底部输入框冲突问题
-        registerEMUI3_x();  //解决华为emui3.1或者3.0导航栏手动隐藏的问题
+        if (mPagerImmersion != null) {
+            //页面是Fragment时由Fragment栈的生命周期监听在页面视图销毁时移除记录的参数
+            FragmentImmersionStack stack = getFragment() != null ? FragmentImmersionStack.of(mActivity, mDecorView) : null;
+            if (stack != null)
+                stack.addPager(mPagerImmersion);
+            mPagerImmersion.record(mPagerPosition, this);
+            return;
+        }
+        initNow();
     }
 
     /**
-     * 初始化状态栏和导航栏
+     * 立即生效，PagerImmersion在ViewPager停止滑动后调用
      */
-    private void initBar() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            int uiFlags = View.SYSTEM_UI_FLAG_LAYOUT_STABLE;  //防止系统栏隐藏时内容区域大小发生变化
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && !OSUtils.isEMUI3_1()) {
-                uiFlags = initBarAboveLOLLIPOP(uiFlags); //初始化5.0以上，包含5.0
-                uiFlags = setStatusBarDarkFont(uiFlags); //android 6.0以上设置状态栏字体为暗色
-                supportActionBar();
-            } else {
-                initBarBelowLOLLIPOP(); //初始化5.0以下，4.4以上沉浸式
-                solveNavigation();  //解决android4.4有导航栏的情况下，activity底部被导航栏遮挡的问题和android 5.0以下解决状态栏和布局重叠问题
-            }
-            uiFlags = hideBar(uiFlags);  //隐藏状态栏或者导航栏
-            mWindow.getDecorView().setSystemUiVisibility(uiFlags);
+    void initNow() {
+        Fragment fragment = getFragment();
+        FragmentImmersionStack stack = fragment != null ? FragmentImmersionStack.of(mActivity, mDecorView) : null;
+        if (stack != null) {
+            stack.push(fragment, this);
+            return;
         }
-        if (OSUtils.isMIUI6Later())
-            setMIUIStatusBarDarkFont(mWindow, mBarParams.darkFont);         //修改miui状态栏字体颜色
-        if (OSUtils.isFlymeOS4Later()) {          // 修改Flyme OS状态栏字体颜色
-            if (mBarParams.flymeOSStatusBarFontColor != 0) {
-                FlymeOSStatusBarFontUtils.setStatusBarDarkIcon(mActivity, mBarParams.flymeOSStatusBarFontColor);
-            } else {
-                if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M)
-                    FlymeOSStatusBarFontUtils.setStatusBarDarkIcon(mActivity, mBarParams.darkFont);
+        apply();
+        if (fragment == null)
+            FragmentImmersionStack.activityApplied(mDecorView, mBarParams);
+    }
+
+    /**
+     * Fragment栈切换时调用，只执行与之前生效的参数之间的差异
+     *
+     * @param diff BarParams.DIFF_*的组合
+     */
+    void applyDiff(int diff) {
+        if ((diff & BarParams.DIFF_LAYOUT) != 0) {
+            apply();
+            return;
+        }
+        if ((diff & BarParams.DIFF_DARK_FONT) != 0)
+            applyDarkFont(mBarParams.darkFont);
+        if ((diff & (BarParams.DIFF_STATUS_BAR_COLOR | BarParams.DIFF_NAVIGATION_BAR_COLOR)) != 0)
+            updateColors();
+    }
+
+    private void apply() {
+        boolean traced = ImmersionTrace.begin("SimpleImmersion#init");
+        try {
+            ImmersionMetrics metrics = ImmersionMetrics.sample();
+            int dispatchCount = mTransaction.getDispatchCount();
+            AutoDarkFont autoDarkFont = (AutoDarkFont) mDecorView.getTag(R.id.immersion_auto_dark_font);
+            if (mBarParams.autoDarkFont && autoDarkFont != null)
+                mBarParams.darkFont = autoDarkFont.isDarkFont();  //保持已经自动切换的字体颜色
+            for (int phase = 0; phase < ImmersionMetrics.PHASE_COUNT; phase++) {
+                boolean phaseTraced = ImmersionTrace.begin(PHASE_SECTIONS[phase]);
+                try {
+                    long start = ImmersionMetrics.start(metrics);
+                    initPhase(phase);
+                    ImmersionMetrics.record(metrics, phase, start);
+                } finally {
+                    ImmersionTrace.end(phaseTraced);
+                }
             }
+            setupAutoDarkFont();
+            WindowCutout.watch(mActivity, mDecorView, mConfig.getStatusBarHeight());
+            ImmersionEventLog.record(ImmersionEventLog.EVENT_APPLY, mTransaction.getDispatchCount() - dispatchCount);
+            ImmersionJankMonitor.mark(ImmersionJankMonitor.OP_APPLY);
+            ImmersionJankMonitor.watch(mWindow);
+        } finally {
+            ImmersionTrace.end(traced);
+        }
+    }
+
+    private void initPhase(int phase) {
+        switch (phase) {
+            case ImmersionMetrics.PHASE_INIT_BAR:
+                initBar();   //初始化沉浸式
+                break;
+            case ImmersionMetrics.PHASE_STATUS_BAR_VIEW:
+                setStatusBarView();  //通过状态栏高度动态设置状态栏布局
+                break;
+            case ImmersionMetrics.PHASE_TRANSFORM_VIEW:
+                transformView();  //变色view
+                break;
+            case ImmersionMetrics.PHASE_KEYBOARD_ENABLE:
+                keyboardEnable();  //解决软键盘与底部输入框冲突问题
+                break;
+            case ImmersionMetrics.PHASE_REGISTER_EMUI3_X:
+                registerEMUI3_x();  //解决华为emui3.1或者3.0导航栏手动隐藏的问题
+                break;
+        }
+    }
+
+    /**
+     * 只更新状态栏、导航栏和变色view的颜色，不修改flag和布局，适合在变色和动画中频繁调用
+     * Update colors only.
+     */
+    public void updateColors() {
+        boolean traced = ImmersionTrace.begin("SimpleImmersion#updateColors");
+        try {
+            boolean aboveLollipop = ImmersionPlanner.isAboveLollipop(Build.VERSION.SDK_INT, OSUtils.isEMUI3_1());
+            applyBarColors(aboveLollipop, resolvedStatusBarColor(), resolvedNavigationBarColor(aboveLollipop));
+            transformView();
+        } finally {
+            ImmersionTrace.end(traced);
+        }
+    }
+
+    /**
+     * 按参数计算出的状态栏颜色
+     */
+    int resolvedStatusBarColor() {
+        return ImmersionPlanner.statusBarColor(colorInput());
+    }
+
+    /**
+     * 按参数计算出的导航栏颜色，4.4为假导航栏的颜色
+     */
+    int resolvedNavigationBarColor(boolean aboveLollipop) {
+        PlanInput input = colorInput();
+        return aboveLollipop ? ImmersionPlanner.navigationBarColor(input) : ImmersionPlanner.kitkatNavigationBarColor(input);
+    }
+
+    /**
+     * 直接设置状态栏和导航栏颜色，不修改参数也不分配内存，ViewPager滑动时每帧调用
+     */
+    void applyBarColors(boolean aboveLollipop, @ColorInt int statusBarColor, @ColorInt int navigationBarColor) {
+        if (aboveLollipop) {
+            mTransaction.setStatusBarColor(statusBarColor);
+            if (mBarParams.navigationBarEnable)
+                mTransaction.setNavigationBarColor(navigationBarColor);
+            mTransaction.commit();
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            View statusBarView = findStatusBarView();
+            if (statusBarView != null)
+                setBackgroundColor(statusBarView, statusBarColor);
+            View navigationBarView = findNavigationBarView();
+            if (navigationBarView != null)
+                setBackgroundColor(navigationBarView, navigationBarColor);
         }
     }
 
+    /**
+     * 只修改状态栏透明度并设置状态栏和导航栏颜色，不分配内存，ScrollBinder每帧最多调用一次
+     */
+    void applyStatusBarAlpha(boolean aboveLollipop, float statusBarAlpha) {
+        mBarParams.statusBarAlpha = statusBarAlpha;
+        applyBarColors(aboveLollipop, resolvedStatusBarColor(), resolvedNavigationBarColor(aboveLollipop));
+    }
+
+    /**
+     * 初始化状态栏和导航栏，由ImmersionPlanner计算需要的修改，这里只负责执行
+     */
+    private void initBar() {
+        ApplyPlan plan = ImmersionPlanner.plan(planInput());
+        if (plan.getMode() != ApplyPlan.MODE_NONE) {
+            mTransaction.clearFlags(plan.getClearFlags());
+            mTransaction.addFlags(plan.getAddFlags());
+            if (plan.isSetStatusBarColor())
+                mTransaction.setStatusBarColor(plan.getStatusBarColor());  //设置状态栏颜色
+            if (plan.isSetNavigationBarColor())
+                mTransaction.setNavigationBarColor(plan.getNavigationBarColor());  //设置导航栏颜色
+            if (plan.hasStatusBarView())
+                setupStatusBarView(plan); //创建一个假的状态栏
+            if (plan.hasNavigationBarView())
+                setupNavBarView(plan);   //创建一个假的导航栏
+            mBarParams.systemWindows = plan.isSystemWindows();
+            applyContentPadding(plan);
+            ImmersionMetrics.count(ImmersionMetrics.COUNTER_SET_SYSTEM_UI_VISIBILITY);
+            mDecorView.setSystemUiVisibility(plan.getSystemUiVisibility());
+        }
+        if (plan.isApplyMiuiDarkFont())
+            setMIUIStatusBarDarkFont(plan.isMiuiDarkFont());         //修改miui状态栏字体颜色
+        if (plan.getFlymeAction() == ApplyPlan.FLYME_COLOR)          // 修改Flyme OS状态栏字体颜色
+            FlymeOSStatusBarFontUtils.setStatusBarDarkIcon(mActivity, plan.getFlymeFontColor(), mTransaction);
+        else if (plan.getFlymeAction() == ApplyPlan.FLYME_DARK_FONT)
+            FlymeOSStatusBarFontUtils.setStatusBarDarkIcon(mActivity, plan.isFlymeDarkFont(), mTransaction);
+        mTransaction.commit();  //flag、颜色和厂商属性统一提交
+    }
+
+    /**
+     * 颜色相关的输入，updateColors()只需要这部分
+     */
+    private PlanInput colorInput() {
+        PlanInput input = mPlanInput;
+        input.statusBarColor = mBarParams.statusBarColor;
+        input.statusBarColorTransform = mBarParams.statusBarColorTransform;
+        input.statusBarAlpha = mBarParams.statusBarAlpha;
+        input.statusBarFlag = mBarParams.statusBarFlag;
+        input.navigationBarColor = mBarParams.navigationBarColor;
+        input.navigationBarColorTransform = mBarParams.navigationBarColorTransform;
+        input.navigationBarAlpha = mBarParams.navigationBarAlpha;
+        input.fullScreen = mBarParams.fullScreen;
+        input.navigationBarEnable = mBarParams.navigationBarEnable;
+        input.navigationBarWithKitkatEnable = mBarParams.navigationBarWithKitkatEnable;
+        return input;
+    }
+
+    /**
+     * 读取系统版本、rom、屏幕和布局信息，与BarParams一起组成计划的输入
+     */
+    private PlanInput planInput() {
+        PlanInput input = colorInput();
+        input.sdkInt = Build.VERSION.SDK_INT;
+        input.emui3_1 = OSUtils.isEMUI3_1();
+        input.miui6Later = OSUtils.isMIUI6Later();
+        input.flyme4Later = OSUtils.isFlymeOS4Later();
+        input.hasNavigationBar = mConfig.hasNavigtionBar();
+        input.navigationAtBottom = mConfig.isNavigationAtBottom();
+        input.statusBarHeight = mConfig.getStatusBarHeight();
+        input.actionBarHeight = mConfig.getActionBarHeight();
+        input.navigationBarHeight = mConfig.getNavigationBarHeight();
+        input.navigationBarWidth = mConfig.getNavigationBarWidth();
+        if (input.sdkInt >= Build.VERSION_CODES.KITKAT) {
+            if (ImmersionPlanner.isAboveLollipop(input.sdkInt, input.emui3_1))
+                input.childFitsSystemWindows = childFitsSystemWindows(mContentView);
+            else
+                input.drawerChildFitsSystemWindows = drawerChildFitsSystemWindows(mContentView);
+        }
+        input.fullScreenTemp = mBarParams.fullScreenTemp;
+        input.barHide = mBarParams.barHide.flag;
+        input.darkFont = mBarParams.darkFont;
+        input.flymeOSStatusBarFontColor = mBarParams.flymeOSStatusBarFontColor;
+        input.isSupportActionBar = mBarParams.isSupportActionBar;
+        input.fits = mBarParams.fits;
+        return input;
+    }
+
     /**
      * 通过状态栏高度动态设置状态栏布局
      */
     private void setStatusBarView() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && mBarParams.statusBarViewByHeight != null) {
             ViewGroup.LayoutParams params = mBarParams.statusBarViewByHeight.getLayoutParams();
-            params.height = mConfig.getStatusBarHeight();
-            mBarParams.statusBarViewByHeight.setLayoutParams(params);
+            if (params.height != mConfig.getStatusBarHeight()) {
+                params.height = mConfig.getStatusBarHeight();
+                mBarParams.statusBarViewByHeight.setLayoutParams(params);
+            }
         }
     }
 
@@ -306,9 +766,9 @@ public class SimpleImmersion {
                 }
                 if (view != null) {
                     if (Math.abs(mBarParams.viewAlpha - 0.0f) == 0)
-                        view.setBackgroundColor(ColorUtils.blendARGB(colorBefore, colorAfter, mBarParams.statusBarAlpha));
+                        view.setBackgroundColor(ColorMath.blendARGB(colorBefore, colorAfter, mBarParams.statusBarAlpha));
                     else
-                        view.setBackgroundColor(ColorUtils.blendARGB(colorBefore, colorAfter, mBarParams.viewAlpha));
+                        view.setBackgroundColor(ColorMath.blendARGB(colorBefore, colorAfter, mBarParams.viewAlpha));
                 }
             }
         }
@@ -321,9 +781,19 @@ public class SimpleImmersion {
     private void keyboardEnable() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
             if (mBarParams.keyboardPatch == null) {
-                mBarParams.keyboardPatch = KeyboardPatch.patch(mActivity, mWindow);
+                //同一个窗口重复init()时复用已有的监听，避免监听随init()次数累积
+                KeyboardPatch keyboardPatch = (KeyboardPatch) mDecorView.getTag(R.id.immersion_keyboard_patch);
+                if (keyboardPatch == null) {
+                    keyboardPatch = KeyboardPatch.patch(mActivity, mWindow);
+                    mDecorView.setTag(R.id.immersion_keyboard_patch, keyboardPatch);
+                }
+                mBarParams.keyboardPatch = keyboardPatch;
             }
             mBarParams.keyboardPatch.setBarParams(mBarParams);
+            if (mBarParams.restoredKeyboardHeight != 0) {
+                mBarParams.keyboardPatch.restore(mBarParams.restoredKeyboardHeight, mBarParams.restoredKeyboardPadding);
+                mBarParams.restoredKeyboardHeight = 0;
+            }
             if (mBarParams.keyboardEnable) {  //解决软键盘与底部输入框冲突问题
                 mBarParams.keyboardPatch.enable(mBarParams.keyboardMode);
             } else {
@@ -332,6 +802,38 @@ public class SimpleImmersion {
         }
     }
 
+    /**
+     * 开启或关闭自动切换状态栏字体颜色
+     */
+    private void setupAutoDarkFont() {
+        if (mBarParams.autoDarkFont && OSUtils.isSupportStatusBarDarkFont())
+            AutoDarkFont.attach(this, mWindow, mConfig.getStatusBarHeight(), mBarParams.darkFont);
+        else
+            AutoDarkFont.detach(mDecorView);
+    }
+
+    /**
+     * 自动采样的结果越过阈值或Fragment栈切换时调用，只切换字体颜色，不重新计算flag、颜色和布局
+     */
+    void applyDarkFont(boolean darkFont) {
+        mBarParams.darkFont = darkFont;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            int visibility = mDecorView.getSystemUiVisibility();
+            int updated = darkFont ? visibility | View.SYSTEM_UI_FLAG_LIGHT_STATUS_BAR
+                    : visibility & ~View.SYSTEM_UI_FLAG_LIGHT_STATUS_BAR;
+            if (updated != visibility) {
+                ImmersionMetrics.count(ImmersionMetrics.COUNTER_SET_SYSTEM_UI_VISIBILITY);
+                mDecorView.setSystemUiVisibility(updated);
+            }
+        }
+        if (OSUtils.isMIUI6Later())
+            setMIUIStatusBarDarkFont(darkFont);
+        if (OSUtils.isFlymeOS4Later() && mBarParams.flymeOSStatusBarFontColor == 0
+                && Build.VERSION.SDK_INT < Build.VERSION_CODES.M)
+            FlymeOSStatusBarFontUtils.setStatusBarDarkIcon(mActivity, darkFont, mTransaction);
+        mTransaction.commit();
+    }
+
     /**
      * 注册emui3.x导航栏监听函数
      * Register emui 3 x.
@@ -339,320 +841,289 @@ public class SimpleImmersion {
     private void registerEMUI3_x() {
         if ((OSUtils.isEMUI3_1() || OSUtils.isEMUI3_0()) && mConfig.hasNavigtionBar()
                 && mBarParams.navigationBarEnable && mBarParams.navigationBarWithKitkatEnable) {
-            if (mBarParams.navigationStatusObserver == null && mBarParams.navigationBarView != null) {
+            //每个窗口只注册一次，destroy()时取消注册
+            if (mDecorView.getTag(R.id.immersion_navigation_observer) != null)
+                return;
+            mBarParams.navigationBarView = findNavigationBarView();
+            if (mBarParams.navigationBarView != null) {
                 mBarParams.navigationStatusObserver = new ContentObserver(new Handler()) {
                     @Override
                     public void onChange(boolean selfChange) {
-                        int navigationBarIsMin = Settings.System.getInt(mActivity.getContentResolver(),
-                                NAVIGATIONBAR_IS_MIN, 0);
-                        if (navigationBarIsMin == 1) {
-                            //导航键隐藏了
-                            mBarParams.navigationBarView.setVisibility(View.GONE);
-                            mContentView.setPadding(0, mContentView.getPaddingTop(), 0, 0);
-                        } else {
-                            //导航键显示了
-                            mBarParams.navigationBarView.setVisibility(View.VISIBLE);
-                            if (!mBarParams.systemWindows) {
-                                if (mConfig.isNavigationAtBottom())
-                                    mContentView.setPadding(0, mContentView.getPaddingTop(), 0, mConfig.getNavigationBarHeight());
-                                else
-                                    mContentView.setPadding(0, mContentView.getPaddingTop(), mConfig.getNavigationBarWidth(), 0);
-                            } else
+                        ImmersionMetrics.count(ImmersionMetrics.COUNTER_SET_PADDING);
+                        boolean traced = ImmersionTrace.begin("SimpleImmersion#onNavigationChange");
+                        try {
+                            int navigationBarIsMin = Settings.System.getInt(mActivity.getContentResolver(),
+                                    NAVIGATIONBAR_IS_MIN, 0);
+                            ImmersionEventLog.record(ImmersionEventLog.EVENT_EMUI_NAVIGATION, navigationBarIsMin);
+                            if (navigationBarIsMin == 1) {
+                                //导航键隐藏了
+                                mBarParams.navigationBarView.setVisibility(View.GONE);
                                 mContentView.setPadding(0, mContentView.getPaddingTop(), 0, 0);
+                            } else {
+                                //导航键显示了
+                                mBarParams.navigationBarView.setVisibility(View.VISIBLE);
+                                if (!mBarParams.systemWindows) {
+                                    if (mConfig.isNavigationAtBottom())
+                                        mContentView.setPadding(0, mContentView.getPaddingTop(), 0, mConfig.getNavigationBarHeight());
+                                    else
+                                        mContentView.setPadding(0, mContentView.getPaddingTop(), mConfig.getNavigationBarWidth(), 0);
+                                } else
+                                    mContentView.setPadding(0, mContentView.getPaddingTop(), 0, 0);
+                            }
+                        } finally {
+                            ImmersionTrace.end(traced);
                         }
                     }
                 };
+                mDecorView.setTag(R.id.immersion_navigation_observer, mBarParams.navigationStatusObserver);
+                mActivity.getContentResolver().registerContentObserver(Settings.System.getUriFor
+                        (NAVIGATIONBAR_IS_MIN), true, mBarParams.navigationStatusObserver);
             }
-            mActivity.getContentResolver().registerContentObserver(Settings.System.getUriFor
-                    (NAVIGATIONBAR_IS_MIN), true, mBarParams.navigationStatusObserver);
         }
     }
 
     /**
-     * 初始化android 5.0以上状态栏和导航栏
-     *
-     * @param uiFlags the ui flags
-     * @return the int
+     * 在Activity的onDestroy()中调用，取消软键盘监听、emui3.x导航栏监听和字体颜色采样；
+     * 通过with(activity, fragment)创建时只把Fragment的参数出栈
+     * Destroy.
      */
-    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
-    private int initBarAboveLOLLIPOP(int uiFlags) {
-        uiFlags |= View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN;  //Activity全屏显示，但状态栏不会被隐藏覆盖，状态栏依然可见，Activity顶端布局部分会被状态栏遮住。
-        if (mBarParams.fullScreen && mBarParams.navigationBarEnable) {
-            uiFlags |= View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION; //Activity全屏显示，但导航栏不会被隐藏覆盖，导航栏依然可见，Activity底部布局部分会被导航栏遮住。
+    public void destroy() {
+        if (mPagerImmersion != null)
+            mPagerImmersion.remove(mPagerPosition, this);
+        Fragment fragment = getFragment();
+        FragmentImmersionStack stack = (FragmentImmersionStack) mDecorView.getTag(R.id.immersion_fragment_stack);
+        if (fragment != null && stack != null) {
+            stack.remove(fragment);
+            return;
         }
-        mWindow.clearFlags(WindowManager.LayoutParams.FLAG_TRANSLUCENT_STATUS);
-        if (mConfig.hasNavigtionBar()) {  //判断是否存在导航栏
-            mWindow.clearFlags(WindowManager.LayoutParams.FLAG_TRANSLUCENT_NAVIGATION);
+        FragmentImmersionStack.release(mDecorView);
+        mDecorView.setTag(R.id.immersion_activity_params, null);
+        AutoDarkFont.detach(mDecorView);
+        ImmersionJankMonitor.unwatch(mWindow);
+        KeyboardPatch keyboardPatch = (KeyboardPatch) mDecorView.getTag(R.id.immersion_keyboard_patch);
+        if (keyboardPatch != null) {
+            //保持当前的软键盘模式，只取消监听
+            keyboardPatch.disable(mWindow.getAttributes().softInputMode);
+            mDecorView.setTag(R.id.immersion_keyboard_patch, null);
         }
-        mWindow.addFlags(WindowManager.LayoutParams.FLAG_DRAWS_SYSTEM_BAR_BACKGROUNDS);  //需要设置这个才能设置状态栏颜色
-        if (mBarParams.statusBarFlag)
-            mWindow.setStatusBarColor(ColorUtils.blendARGB(mBarParams.statusBarColor,
-                    mBarParams.statusBarColorTransform, mBarParams.statusBarAlpha));  //设置状态栏颜色
-        else
-            mWindow.setStatusBarColor(ColorUtils.blendARGB(mBarParams.statusBarColor,
-                    Color.TRANSPARENT, mBarParams.statusBarAlpha));  //设置状态栏颜色
-        if (mBarParams.navigationBarEnable)
-            mWindow.setNavigationBarColor(ColorUtils.blendARGB(mBarParams.navigationBarColor,
-                    mBarParams.navigationBarColorTransform, mBarParams.navigationBarAlpha));  //设置导航栏颜色
-        return uiFlags;
+        ContentObserver observer = (ContentObserver) mDecorView.getTag(R.id.immersion_navigation_observer);
+        if (observer != null) {
+            mActivity.getContentResolver().unregisterContentObserver(observer);
+            mDecorView.setTag(R.id.immersion_navigation_observer, null);
+        }
+        mBarParams.keyboardPatch = null;
+        mBarParams.navigationStatusObserver = null;
     }
 
     /**
-     * 初始化android 4.4和emui3.1状态栏和导航栏
+     * 设置一个可以自定义颜色的状态栏，只在第一次时添加到decorView，之后只更新颜色和必要时的尺寸
      */
-    private void initBarBelowLOLLIPOP() {
-        mWindow.addFlags(WindowManager.LayoutParams.FLAG_TRANSLUCENT_STATUS);//透明状态栏
-        setupStatusBarView(); //创建一个假的状态栏
-        if (mConfig.hasNavigtionBar()) {  //判断是否存在导航栏，是否禁止设置导航栏
-            if (mBarParams.navigationBarEnable && mBarParams.navigationBarWithKitkatEnable)
-                mWindow.addFlags(WindowManager.LayoutParams.FLAG_TRANSLUCENT_NAVIGATION);//透明导航栏，设置这个，如果有导航栏，底部布局会被导航栏遮住
-            else
-                mWindow.clearFlags(WindowManager.LayoutParams.FLAG_TRANSLUCENT_NAVIGATION);
-            setupNavBarView();   //创建一个假的导航栏
+    private void setupStatusBarView(ApplyPlan plan) {
+        View statusBarView = findStatusBarView();
+        if (statusBarView == null) {
+            statusBarView = new View(mActivity);
+            statusBarView.setId(R.id.immersion_status_bar_view);
+            FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(FrameLayout.LayoutParams.MATCH_PARENT,
+                    plan.getStatusBarViewHeight());
+            params.gravity = Gravity.TOP;
+            statusBarView.setLayoutParams(params);
+            mDecorView.addView(statusBarView);
+            ImmersionJankMonitor.mark(ImmersionJankMonitor.OP_BAR_VIEW_ATTACH);
+            mBarParams.statusBarView = statusBarView;
+        } else {
+            attachToDecorView(statusBarView);
+            updateBarViewSize(statusBarView, FrameLayout.LayoutParams.MATCH_PARENT,
+                    plan.getStatusBarViewHeight(), Gravity.TOP);
         }
+        setBackgroundColor(statusBarView, plan.getStatusBarViewColor());
+        if (statusBarView.getVisibility() != View.VISIBLE)
+            statusBarView.setVisibility(View.VISIBLE);
     }
 
     /**
-     * 设置一个可以自定义颜色的状态栏
+     * 设置一个可以自定义颜色的导航栏，只在第一次时添加到decorView，之后只更新颜色和必要时的尺寸
      */
-    private void setupStatusBarView() {
-        if (mBarParams.statusBarView == null) {
-            mBarParams.statusBarView = new View(mActivity);
+    private void setupNavBarView(ApplyPlan plan) {
+        int width = plan.getNavigationBarViewWidth();
+        int height = plan.getNavigationBarViewHeight();
+        int gravity = plan.isNavigationBarViewAtBottom() ? Gravity.BOTTOM : Gravity.END;
+        View navigationBarView = findNavigationBarView();
+        if (navigationBarView == null) {
+            navigationBarView = new View(mActivity);
+            navigationBarView.setId(R.id.immersion_navigation_bar_view);
+            FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(width, height);
+            params.gravity = gravity;
+            navigationBarView.setLayoutParams(params);
+            mDecorView.addView(navigationBarView);
+            ImmersionJankMonitor.mark(ImmersionJankMonitor.OP_BAR_VIEW_ATTACH);
+            mBarParams.navigationBarView = navigationBarView;
+        } else {
+            attachToDecorView(navigationBarView);
+            updateBarViewSize(navigationBarView, width, height, gravity);
         }
-        FrameLayout.LayoutParams params = new FrameLayout.LayoutParams(FrameLayout.LayoutParams.MATCH_PARENT,
-                mConfig.getStatusBarHeight());
-        params.gravity = Gravity.TOP;
-        mBarParams.statusBarView.setLayoutParams(params);
-        if (mBarParams.statusBarFlag)
-            mBarParams.statusBarView.setBackgroundColor(ColorUtils.blendARGB(mBarParams.statusBarColor,
-                    mBarParams.statusBarColorTransform, mBarParams.statusBarAlpha));
-        else
-            mBarParams.statusBarView.setBackgroundColor(ColorUtils.blendARGB(mBarParams.statusBarColor,
-                    Color.TRANSPARENT, mBarParams.statusBarAlpha));
-        mBarParams.statusBarView.setVisibility(View.VISIBLE);
-        ViewGroup viewGroup = (ViewGroup) mBarParams.statusBarView.getParent();
-        if (viewGroup != null)
-            viewGroup.removeView(mBarParams.statusBarView);
-        mDecorView.addView(mBarParams.statusBarView);
+        setBackgroundColor(navigationBarView, plan.getNavigationBarViewColor());
+        if (navigationBarView.getVisibility() != View.VISIBLE)
+            navigationBarView.setVisibility(View.VISIBLE);
     }
 
-    /**
-     * 设置一个可以自定义颜色的导航栏
-     */
-    private void setupNavBarView() {
-        if (mBarParams.navigationBarView == null) {
-            mBarParams.navigationBarView = new View(mActivity);
+    private View findStatusBarView() {
+        if (mBarParams.statusBarView == null)
+            mBarParams.statusBarView = mDecorView.findViewById(R.id.immersion_status_bar_view);
+        return mBarParams.statusBarView;
+    }
+
+    private View findNavigationBarView() {
+        if (mBarParams.navigationBarView == null)
+            mBarParams.navigationBarView = mDecorView.findViewById(R.id.immersion_navigation_bar_view);
+        return mBarParams.navigationBarView;
+    }
+
+    private void attachToDecorView(View barView) {
+        ViewGroup parent = (ViewGroup) barView.getParent();
+        if (parent != mDecorView) {
+            if (parent != null)
+                parent.removeView(barView);
+            mDecorView.addView(barView);
+            ImmersionJankMonitor.mark(ImmersionJankMonitor.OP_BAR_VIEW_ATTACH);
         }
-        FrameLayout.LayoutParams params;
-        if (mConfig.isNavigationAtBottom()) {
-            params = new FrameLayout.LayoutParams(FrameLayout.LayoutParams.MATCH_PARENT, mConfig.getNavigationBarHeight());
-            params.gravity = Gravity.BOTTOM;
-        } else {
-            params = new FrameLayout.LayoutParams(mConfig.getNavigationBarWidth(), FrameLayout.LayoutParams.MATCH_PARENT);
-            params.gravity = Gravity.END;
-        }
-        mBarParams.navigationBarView.setLayoutParams(params);
-        if (mBarParams.navigationBarEnable && mBarParams.navigationBarWithKitkatEnable) {
-            if (!mBarParams.fullScreen && (mBarParams.navigationBarColorTransform == Color.TRANSPARENT)) {
-                mBarParams.navigationBarView.setBackgroundColor(ColorUtils.blendARGB(mBarParams.navigationBarColor,
-                        Color.BLACK, mBarParams.navigationBarAlpha));
-            } else {
-                mBarParams.navigationBarView.setBackgroundColor(ColorUtils.blendARGB(mBarParams.navigationBarColor,
-                        mBarParams.navigationBarColorTransform, mBarParams.navigationBarAlpha));
-            }
-        } else
-            mBarParams.navigationBarView.setBackgroundColor(Color.TRANSPARENT);
-        mBarParams.navigationBarView.setVisibility(View.VISIBLE);
-        ViewGroup viewGroup = (ViewGroup) mBarParams.navigationBarView.getParent();
-        if (viewGroup != null)
-            viewGroup.removeView(mBarParams.navigationBarView);
-        mDecorView.addView(mBarParams.navigationBarView);
     }
 
     /**
-     * Sets status bar dark font.
-     * 设置状态栏字体颜色，android6.0以上
+     * 尺寸发生变化时才重新设置LayoutParams
      */
-    private int setStatusBarDarkFont(int uiFlags) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && mBarParams.darkFont) {
-            return uiFlags | View.SYSTEM_UI_FLAG_LIGHT_STATUS_BAR;
-        } else {
-            return uiFlags;
+    /**
+     * contentView下是否有ViewGroup使用了fitsSystemWindows属性，5.0以上使用
+     */
+    private static boolean childFitsSystemWindows(ViewGroup contentView) {
+        for (int i = 0, count = contentView.getChildCount(); i < count; i++) {
+            View childView = contentView.getChildAt(i);
+            if (childView instanceof ViewGroup && childView.getFitsSystemWindows())
+                return true;
         }
+        return false;
     }
 
     /**
-     * 支持actionBar的界面
-     * Support action bar.
+     * 同上，但DrawerLayout以其第一个子view为准，4.4和emui3.1使用
      */
-    private void supportActionBar() {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && !OSUtils.isEMUI3_1()) {
-            for (int i = 0, count = mContentView.getChildCount(); i < count; i++) {
-                View childView = mContentView.getChildAt(i);
-                if (childView instanceof ViewGroup) {
-                    mBarParams.systemWindows = childView.getFitsSystemWindows();
-                    if (mBarParams.systemWindows) {
-                        mContentView.setPadding(0, 0, 0, 0);
-                        return;
-                    }
-                }
-            }
-            if (mBarParams.isSupportActionBar) {
-                mContentView.setPadding(0, mConfig.getStatusBarHeight() + mConfig.getActionBarHeight(), 0, 0);
-            } else {
-                if (mBarParams.fits)
-                    mContentView.setPadding(0, mConfig.getStatusBarHeight(), 0, 0);
-                else
-                    mContentView.setPadding(0, 0, 0, 0);
-            }
+    private static boolean drawerChildFitsSystemWindows(ViewGroup contentView) {
+        for (int i = 0, count = contentView.getChildCount(); i < count; i++) {
+            View childView = contentView.getChildAt(i);
+            if (childView instanceof DrawerLayout) {
+                View childAt1 = ((DrawerLayout) childView).getChildAt(0);
+                if (childAt1 != null && childAt1.getFitsSystemWindows())
+                    return true;
+            } else if (childView instanceof ViewGroup && childView.getFitsSystemWindows())
+                return true;
+        }
+        return false;
+    }
+
+    private static void updateBarViewSize(View barView, int width, int height, int gravity) {
+        FrameLayout.LayoutParams params = (FrameLayout.LayoutParams) barView.getLayoutParams();
+        if (params.width != width || params.height != height || params.gravity != gravity) {
+            params.width = width;
+            params.height = height;
+            params.gravity = gravity;
+            barView.setLayoutParams(params);
         }
     }
 
     /**
-     * 解决安卓4.4和EMUI3.1导航栏与状态栏的问题，以及系统属性fitsSystemWindows的坑
+     * 颜色相同时不再设置背景，避免多余的重绘
      */
-    private void solveNavigation() {
-        for (int i = 0, count = mContentView.getChildCount(); i < count; i++) {
-            View childView = mContentView.getChildAt(i);
-            if (childView instanceof ViewGroup) {
-                if (childView instanceof DrawerLayout) {
-                    View childAt1 = ((DrawerLayout) childView).getChildAt(0);
-                    if (childAt1 != null) {
-                        mBarParams.systemWindows = childAt1.getFitsSystemWindows();
-                        if (mBarParams.systemWindows) {
-                            mContentView.setPadding(0, 0, 0, 0);
-                            return;
-                        }
-                    }
-                } else {
-                    mBarParams.systemWindows = childView.getFitsSystemWindows();
-                    if (mBarParams.systemWindows) {
-                        mContentView.setPadding(0, 0, 0, 0);
-                        return;
-                    }
-                }
-            }
+    private static void setBackgroundColor(View view, @ColorInt int color) {
+        Drawable background = view.getBackground();
+        if (background instanceof ColorDrawable && ((ColorDrawable) background).getColor() == color)
+            return;
+        view.setBackgroundColor(color);
+    }
 
+    /**
+     * 按计划设置contentView的padding，与当前padding相同时不再设置，避免多余的requestLayout
+     */
+    private void applyContentPadding(ApplyPlan plan) {
+        if (mContentView.getPaddingLeft() != plan.getPaddingLeft() || mContentView.getPaddingTop() != plan.getPaddingTop()
+                || mContentView.getPaddingRight() != plan.getPaddingRight()
+                || mContentView.getPaddingBottom() != plan.getPaddingBottom()) {
+            ImmersionMetrics.count(ImmersionMetrics.COUNTER_SET_PADDING);
+            mContentView.setPadding(plan.getPaddingLeft(), plan.getPaddingTop(), plan.getPaddingRight(),
+                    plan.getPaddingBottom());
         }
-        // 解决android4.4有导航栏的情况下，activity底部被导航栏遮挡的问题
-        if (mConfig.hasNavigtionBar() && !mBarParams.fullScreenTemp && !mBarParams.fullScreen) {
-            if (mConfig.isNavigationAtBottom()) { //判断导航栏是否在底部
-                if (!mBarParams.isSupportActionBar) { //判断是否支持actionBar
-                    if (mBarParams.navigationBarEnable && mBarParams.navigationBarWithKitkatEnable) {
-                        if (mBarParams.fits)
-                            mContentView.setPadding(0, mConfig.getStatusBarHeight(),
-                                    0, mConfig.getNavigationBarHeight()); //有导航栏，获得rootView的根节点，然后设置距离底部的padding值为导航栏的高度值
-                        else
-                            mContentView.setPadding(0, 0, 0, mConfig.getNavigationBarHeight());
-                    } else {
-                        if (mBarParams.fits)
-                            mContentView.setPadding(0, mConfig.getStatusBarHeight(), 0, 0);
-                        else
-                            mContentView.setPadding(0, 0, 0, 0);
-                    }
-                } else {
-                    //支持有actionBar的界面
-                    if (mBarParams.navigationBarEnable && mBarParams.navigationBarWithKitkatEnable)
-                        mContentView.setPadding(0, mConfig.getStatusBarHeight() +
-                                mConfig.getActionBarHeight() + 10, 0, mConfig.getNavigationBarHeight());
-                    else
-                        mContentView.setPadding(0, mConfig.getStatusBarHeight() +
-                                mConfig.getActionBarHeight() + 10, 0, 0);
-                }
-            } else {
-                if (!mBarParams.isSupportActionBar) {
-                    if (mBarParams.navigationBarEnable && mBarParams.navigationBarWithKitkatEnable) {
-                        if (mBarParams.fits)
-                            mContentView.setPadding(0, mConfig.getStatusBarHeight(),
-                                    mConfig.getNavigationBarWidth(), 0); //不在底部，设置距离右边的padding值为导航栏的宽度值
-                        else
-                            mContentView.setPadding(0, 0, mConfig.getNavigationBarWidth(), 0);
-                    } else {
-                        if (mBarParams.fits)
-                            mContentView.setPadding(0, mConfig.getStatusBarHeight(), 0, 0);
-                        else
-                            mContentView.setPadding(0, 0, 0, 0);
-                    }
-                } else {
-                    //支持有actionBar的界面
-                    if (mBarParams.navigationBarEnable && mBarParams.navigationBarWithKitkatEnable)
-                        mContentView.setPadding(0, mConfig.getStatusBarHeight() +
-                                mConfig.getActionBarHeight() + 10, mConfig.getNavigationBarWidth(), 0);
-                    else
-                        mContentView.setPadding(0, mConfig.getStatusBarHeight() +
-                                mConfig.getActionBarHeight() + 10, 0, 0);
-                }
-            }
-        } else {
-            if (!mBarParams.isSupportActionBar) {
-                if (mBarParams.fits)
-                    mContentView.setPadding(0, mConfig.getStatusBarHeight(), 0, 0);
-                else
-                    mContentView.setPadding(0, 0, 0, 0);
+    }
+
+    /**
+     * 设置状态栏字体图标为深色，需要MIUIV6以上，记录在transaction中统一提交
+     */
+    private void setMIUIStatusBarDarkFont(boolean darkFont) {
+        try {
+            ImmersionMetrics.count(ImmersionMetrics.COUNTER_REFLECTION);
+            Class layoutParams = Class.forName("android.view.MiuiWindowManager$LayoutParams");
+            Field field = layoutParams.getField("EXTRA_FLAG_STATUS_BAR_DARK_MODE");
+            int darkModeFlag = field.getInt(layoutParams);
+            if (darkFont) {
+                mTransaction.setExtraFlags(darkModeFlag, darkModeFlag);//状态栏透明且黑色字体
             } else {
-                //支持有actionBar的界面
-                mContentView.setPadding(0, mConfig.getStatusBarHeight() + mConfig.getActionBarHeight() + 10, 0, 0);
+                mTransaction.setExtraFlags(0, darkModeFlag);//清除黑色字体
             }
+        } catch (Exception e) {
+            e.printStackTrace();
         }
     }
 
     /**
-     * Hide bar.
-     * 隐藏或显示状态栏和导航栏。
+     * 该实例的init()和updateColors()累计引起的window属性分发次数
+     * Gets window attribute dispatch count.
      *
-     * @param uiFlags the ui flags
      * @return the int
      */
+    public int getWindowAttributeDispatchCount() {
+        return mTransaction.getDispatchCount();
+    }
 
-    private int hideBar(int uiFlags) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
-            switch (mBarParams.barHide) {
-                case FLAG_HIDE_BAR:
-                    uiFlags |= View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
-                            | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION
-                            | View.INVISIBLE;
-                    break;
-                case FLAG_HIDE_STATUS_BAR:
-                    uiFlags |= View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN | View.INVISIBLE;
-                    break;
-                case FLAG_HIDE_NAVIGATION_BAR:
-                    uiFlags |= View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
-                            | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION;
-                    break;
-                case FLAG_SHOW_BAR:
-                    uiFlags |= View.SYSTEM_UI_FLAG_VISIBLE;
-                    break;
-            }
-        }
-        return uiFlags | View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY;
+    public BarParams getBarParams() {
+        return mBarParams;
     }
 
     /**
-     * 设置状态栏字体图标为深色，需要MIUIV6以上
-     *
-     * @return boolean 成功执行返回true
+     * 通过with(activity, fragment)创建时的Fragment，已经回收或不是Fragment的参数时返回null
      */
-    private void setMIUIStatusBarDarkFont(Window window, boolean darkFont) {
-        if (window != null) {
-            Class clazz = window.getClass();
-            try {
-                int darkModeFlag;
-                Class layoutParams = Class.forName("android.view.MiuiWindowManager$LayoutParams");
-                Field field = layoutParams.getField("EXTRA_FLAG_STATUS_BAR_DARK_MODE");
-                darkModeFlag = field.getInt(layoutParams);
-                Method extraFlagField = clazz.getMethod("setExtraFlags", int.class, int.class);
-                if (darkFont) {
-                    extraFlagField.invoke(window, darkModeFlag, darkModeFlag);//状态栏透明且黑色字体
-                } else {
-                    extraFlagField.invoke(window, 0, darkModeFlag);//清除黑色字体
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
+    Fragment getFragment() {
+        return mFragmentReference != null ? mFragmentReference.get() : null;
     }
 
-    public BarParams getBarParams() {
-        return mBarParams;
+    /**
+     * barColorFromBitmap()的回调，只持有弱引用，提取完成时实例或Activity已经不存在则丢弃结果
+     */
+    private static final class BarColorTarget implements BarColorExtractor.Callback {
+        private final WeakReference<SimpleImmersion> mImmersion;
+        private final WeakReference<Activity> mActivity;
+        private final WeakReference<BarParams> mBarParams;
+        private boolean mPending;     //没有命中缓存，结果在init()之后到达
+
+        BarColorTarget(SimpleImmersion immersion) {
+            mImmersion = new WeakReference<>(immersion);
+            mActivity = new WeakReference<>(immersion.mActivity);
+            mBarParams = new WeakReference<>(immersion.mBarParams);
+        }
+
+        @Override
+        public void onBarColors(int topColor, int bottomColor) {
+            Activity activity = mActivity.get();
+            BarParams barParams = mBarParams.get();
+            if (activity == null || barParams == null)
+                return;
+            barParams.statusBarColor = topColor;
+            barParams.navigationBarColor = bottomColor;
+            barParams.navigationBarColorTemp = bottomColor;
+            //Activity或Fragment重新init()、Fragment切换后该参数不再生效，不能覆盖当前的颜色
+            if (!mPending || activity.isFinishing()
+                    || !FragmentImmersionStack.isApplied(activity.getWindow().getDecorView(), barParams))
+                return;
+            SimpleImmersion immersion = mImmersion.get();
+            if (immersion == null)
+                immersion = restore(activity, barParams);
+            immersion.updateColors();
+        }
     }
 }
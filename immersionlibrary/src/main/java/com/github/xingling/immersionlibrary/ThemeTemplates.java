@@ -0,0 +1,137 @@
+package com.github.xingling.immersionlibrary;
+
+import android.app.Activity;
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.util.LongSparseArray;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 按主题缓存在style中声明的沉浸式配置
+ * Per-theme cache of BarParams templates declared through theme attributes.
+ * <p>
+ * 每个Activity类只查询一次主题资源id，每个主题和uiMode（夜间模式）的组合只解析一次，
+ * 之后with()直接复制缓存的模板。主题中没有声明任何沉浸式属性时缓存null，使用BarParams的默认值。
+ * 模板从只应用了该主题的新Theme中解析，与activity当前的Theme无关；
+ * 在代码中通过setTheme()切换的主题不会被识别，以manifest中声明的主题为准。
+ * 模板只作为with()的默认参数；通过SimpleImmersion.install(application, SimpleImmersion.themeRule())安装后，
+ * 主题中声明了沉浸式属性的Activity不需要调用with().init()，在第一帧之前自动按模板初始化。
+ */
+final class ThemeTemplates {
+
+    private static final Map<Class<?>, Integer> sThemes = new HashMap<>();
+    private static final LongSparseArray<BarParams> sTemplates = new LongSparseArray<>();
+
+    /**
+     * 主题中声明了沉浸式属性的Activity匹配，参数已经由with()从模板复制，不需要额外配置
+     */
+    static final ImmersionRule RULE = new ImmersionRule() {
+        @Override
+        public boolean matches(Activity activity) {
+            return template(activity) != null;
+        }
+
+        @Override
+        public void configure(Activity activity, SimpleImmersion immersion) {
+        }
+    };
+
+    private ThemeTemplates() {
+    }
+
+    /**
+     * 获得activity主题对应的模板的副本
+     *
+     * @param activity the activity
+     * @return 主题中没有声明沉浸式属性时返回新的默认BarParams
+     */
+    static BarParams newBarParams(Activity activity) {
+        BarParams template = template(activity);
+        return template != null ? template.clone() : new BarParams();
+    }
+
+    private static synchronized BarParams template(Activity activity) {
+        int theme = theme(activity);
+        if (theme == 0)
+            return null;
+        Resources resources = activity.getResources();
+        //颜色可以按夜间模式区分，uiMode不同的配置分别缓存
+        long key = (long) resources.getConfiguration().uiMode << 32 | (theme & 0xFFFFFFFFL);
+        int index = sTemplates.indexOfKey(key);
+        if (index >= 0)
+            return sTemplates.valueAt(index);
+        boolean traced = ImmersionTrace.begin("ThemeTemplates#resolve");
+        try {
+            BarParams template = resolve(resources, theme);
+            sTemplates.put(key, template);
+            return template;
+        } finally {
+            ImmersionTrace.end(traced);
+        }
+    }
+
+    /**
+     * manifest中activity的主题，没有时为application的主题
+     */
+    private static int theme(Activity activity) {
+        Integer theme = sThemes.get(activity.getClass());
+        if (theme == null) {
+            try {
+                theme = activity.getPackageManager().getActivityInfo(activity.getComponentName(), 0).getThemeResource();
+            } catch (PackageManager.NameNotFoundException e) {
+                e.printStackTrace();
+                theme = activity.getApplicationInfo().theme;
+            }
+            sThemes.put(activity.getClass(), theme);
+        }
+        return theme;
+    }
+
+    private static BarParams resolve(Resources resources, int themeId) {
+        Resources.Theme theme = resources.newTheme();
+        theme.applyStyle(themeId, true);
+        TypedArray a = theme.obtainStyledAttributes(R.styleable.SimpleImmersion);
+        try {
+            BarParams template = null;
+            if (a.hasValue(R.styleable.SimpleImmersion_immersionStatusBarColor)) {
+                template = new BarParams();
+                template.statusBarColor = a.getColor(R.styleable.SimpleImmersion_immersionStatusBarColor,
+                        template.statusBarColor);
+            }
+            if (a.hasValue(R.styleable.SimpleImmersion_immersionNavigationBarColor)) {
+                if (template == null)
+                    template = new BarParams();
+                template.navigationBarColor = a.getColor(R.styleable.SimpleImmersion_immersionNavigationBarColor,
+                        template.navigationBarColor);
+                template.navigationBarColorTemp = template.navigationBarColor;
+            }
+            if (a.hasValue(R.styleable.SimpleImmersion_immersionDarkFont)) {
+                if (template == null)
+                    template = new BarParams();
+                template.darkFont = a.getBoolean(R.styleable.SimpleImmersion_immersionDarkFont, false);
+            }
+            if (a.hasValue(R.styleable.SimpleImmersion_immersionFitsSystemWindows)) {
+                if (template == null)
+                    template = new BarParams();
+                template.fits = a.getBoolean(R.styleable.SimpleImmersion_immersionFitsSystemWindows, false);
+            }
+            if (a.hasValue(R.styleable.SimpleImmersion_immersionKeyboardEnable)) {
+                if (template == null)
+                    template = new BarParams();
+                template.keyboardEnable = a.getBoolean(R.styleable.SimpleImmersion_immersionKeyboardEnable, false);
+            }
+            if (a.hasValue(R.styleable.SimpleImmersion_immersionKeyboardMode)) {
+                if (template == null)
+                    template = new BarParams();
+                template.keyboardMode = a.getInt(R.styleable.SimpleImmersion_immersionKeyboardMode,
+                        template.keyboardMode);
+            }
+            return template;
+        } finally {
+            a.recycle();
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.github.xingling.immersionlibrary;
+
+import android.app.Activity;
+import android.content.res.Configuration;
+import android.util.LruCache;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+
+/**
+ * 为标题栏加上状态栏高度，尽量在第一次测量时就生效，避免布局完成后再修改高度引起的第二次measure/layout
+ * Fits a title bar under the status bar within the first layout pass.
+ * <p>
+ * 固定高度的标题栏在布局前即可确定结果，wrap_content的标题栏只加上paddingTop；match_parent的标题栏需要知道父布局高度，
+ * 第一次布局后按activity、view id、屏幕配置和状态栏高度缓存高度，界面重建时直接使用缓存值；
+ * 刘海屏上窗口attach前后的状态栏高度不同，分别缓存。
+ */
+final class TitleBarFitter {
+
+    private static final int HEIGHT_CACHE_SIZE = 64;
+    private static final LruCache<String, Integer> sHeightCache = new LruCache<>(HEIGHT_CACHE_SIZE);
+
+    private TitleBarFitter() {
+    }
+
+    /**
+     * 适配标题栏，可重复调用，每次都以标题栏原始的高度和paddingTop为基准计算
+     *
+     * @param activity        the activity
+     * @param titleBar        标题栏
+     * @param statusBarHeight 状态栏高度
+     * @param barParams       titleBarHeight和titleBarPaddingTopHeight不为0时直接使用
+     */
+    static void fit(Activity activity, final View titleBar, final int statusBarHeight, final BarParams barParams) {
+        final ViewGroup.LayoutParams layoutParams = titleBar.getLayoutParams();
+        int[] original = original(titleBar, layoutParams);
+        if (barParams.titleBarPaddingTopHeight == 0)
+            barParams.titleBarPaddingTopHeight = original[1] + statusBarHeight;
+        setPaddingTop(titleBar, barParams.titleBarPaddingTopHeight);
+        if (original[0] >= 0) {
+            if (barParams.titleBarHeight == 0)
+                barParams.titleBarHeight = original[0] + statusBarHeight;
+            setHeight(titleBar, layoutParams, barParams.titleBarHeight);
+            return;
+        }
+        if (original[0] != ViewGroup.LayoutParams.MATCH_PARENT)
+            return;  //wrap_content的高度由padding撑开，只修改paddingTop，固定高度会让内容变化后不再自适应
+        if (barParams.titleBarHeight != 0) {
+            setHeight(titleBar, layoutParams, barParams.titleBarHeight);
+            return;
+        }
+        final String key = cacheKey(activity, titleBar, statusBarHeight);
+        Integer cached = key != null ? sHeightCache.get(key) : null;
+        if (cached != null) {
+            barParams.titleBarHeight = cached;
+            setHeight(titleBar, layoutParams, cached);
+            return;
+        }
+        //第一次遇到该标题栏，在绘制前修改高度并取消本次绘制，保证第一帧就是正确的高度
+        titleBar.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                titleBar.getViewTreeObserver().removeOnPreDrawListener(this);
+                barParams.titleBarHeight = titleBar.getHeight() + statusBarHeight;
+                if (key != null)
+                    sHeightCache.put(key, barParams.titleBarHeight);
+                setHeight(titleBar, layoutParams, barParams.titleBarHeight);
+                return false;
+            }
+        });
+    }
+
+    /**
+     * 状态栏高度变化后调整已经记录的标题栏高度和paddingTop，两者都是原始值加上状态栏高度；
+     * 还没有记录的值在下一次fit()时按新的状态栏高度计算
+     */
+    static void offset(BarParams barParams, int statusBarHeightOffset) {
+        if (barParams.titleBarPaddingTopHeight != 0)
+            barParams.titleBarPaddingTopHeight += statusBarHeightOffset;
+        if (barParams.titleBarHeight != 0)
+            barParams.titleBarHeight += statusBarHeightOffset;
+    }
+
+    /**
+     * 标题栏未适配前的高度和paddingTop，第一次适配时保存在tag中
+     */
+    private static int[] original(View titleBar, ViewGroup.LayoutParams layoutParams) {
+        Object tag = titleBar.getTag(R.id.immersion_title_bar);
+        if (tag instanceof int[])
+            return (int[]) tag;
+        int[] original = new int[]{layoutParams.height, titleBar.getPaddingTop()};
+        titleBar.setTag(R.id.immersion_title_bar, original);
+        return original;
+    }
+
+    private static String cacheKey(Activity activity, View titleBar, int statusBarHeight) {
+        if (titleBar.getId() == View.NO_ID)
+            return null;
+        Configuration configuration = activity.getResources().getConfiguration();
+        return activity.getClass().getName() + '#' + titleBar.getId()
+                + '#' + configuration.screenWidthDp + 'x' + configuration.screenHeightDp + '#' + statusBarHeight;
+    }
+
+    private static void setPaddingTop(View titleBar, int paddingTop) {
+        if (titleBar.getPaddingTop() != paddingTop) {
+            ImmersionMetrics.count(ImmersionMetrics.COUNTER_SET_PADDING);
+            titleBar.setPadding(titleBar.getPaddingLeft(), paddingTop,
+                    titleBar.getPaddingRight(), titleBar.getPaddingBottom());
+            ImmersionJankMonitor.mark(ImmersionJankMonitor.OP_TITLE_BAR_REFIT);
+        }
+    }
+
+    private static void setHeight(View titleBar, ViewGroup.LayoutParams layoutParams, int height) {
+        if (layoutParams.height != height) {
+            layoutParams.height = height;
+            titleBar.setLayoutParams(layoutParams);
+            ImmersionJankMonitor.mark(ImmersionJankMonitor.OP_TITLE_BAR_REFIT);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.xingling.immersionlibrary;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.os.Build;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import android.view.Window;
+import android.view.WindowInsets;
+
+/**
+ * 每个窗口的刘海屏信息，保存在decorView的tag中
+ * Per-window display cutout, read from the window's own insets.
+ * <p>
+ * 刘海的安全区域由窗口的insets决定，同一块屏幕上FLAG_FULLSCREEN和layoutInDisplayCutoutMode不同的窗口结果不同，不能按屏幕共用；
+ * 窗口的insets没有变化（同一个WindowInsets实例）时直接使用上次的结果，旋转屏幕后重新读取。
+ * with()和init()一般在onCreate()中调用，此时窗口还没有attach，状态栏高度只能按系统尺寸计算；
+ * 第一次init()时注册一次OnPreDrawListener，第一次绘制前读取窗口的insets，刘海比状态栏高时按新的高度重新应用并取消这次绘制。
+ * 不占用decorView的OnApplyWindowInsetsListener，应用在init()前后设置的监听都不受影响。
+ */
+final class WindowCutout implements ViewTreeObserver.OnPreDrawListener {
+
+    private final Activity mActivity;
+    private final View mDecorView;
+    private final int mStatusBarHeight;
+    private WindowInsets mInsets;
+    private CutoutInsets mCutout = CutoutInsets.NONE;
+
+    private WindowCutout(Activity activity, View decorView, int statusBarHeight) {
+        mActivity = activity;
+        mDecorView = decorView;
+        mStatusBarHeight = statusBarHeight;
+    }
+
+    /**
+     * 窗口的刘海屏信息，窗口attach之前、9.0以下或者不在主线程时返回CutoutInsets.NONE
+     */
+    static CutoutInsets get(Window window) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P || Looper.myLooper() != Looper.getMainLooper())
+            return CutoutInsets.NONE;
+        View decorView = window.peekDecorView();
+        WindowInsets insets = decorView != null ? decorView.getRootWindowInsets() : null;
+        if (insets == null)
+            return CutoutInsets.NONE;
+        WindowCutout windowCutout = (WindowCutout) decorView.getTag(R.id.immersion_window_cutout);
+        if (windowCutout == null) {
+            windowCutout = new WindowCutout(null, decorView, 0);
+            decorView.setTag(R.id.immersion_window_cutout, windowCutout);
+        }
+        windowCutout.read(insets);
+        return windowCutout.mCutout;
+    }
+
+    /**
+     * 窗口还没有attach时等待第一次绘制，同一个窗口只注册一次
+     *
+     * @param statusBarHeight 没有刘海信息时使用的状态栏高度
+     */
+    @TargetApi(Build.VERSION_CODES.P)
+    static void watch(Activity activity, View decorView, int statusBarHeight) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P
+                || decorView.getTag(R.id.immersion_window_cutout) != null || decorView.getRootWindowInsets() != null)
+            return;
+        WindowCutout windowCutout = new WindowCutout(activity, decorView, statusBarHeight);
+        decorView.setTag(R.id.immersion_window_cutout, windowCutout);
+        decorView.getViewTreeObserver().addOnPreDrawListener(windowCutout);
+    }
+
+    /**
+     * 第一次绘制前insets已经分发，只有需要重新应用时才取消这次绘制，重新布局后第一帧就是正确的高度
+     */
+    @TargetApi(Build.VERSION_CODES.P)
+    @Override
+    public boolean onPreDraw() {
+        mDecorView.getViewTreeObserver().removeOnPreDrawListener(this);
+        WindowInsets insets = mDecorView.getRootWindowInsets();
+        if (insets == null)
+            return true;
+        read(insets);
+        int offset = mCutout.getSafeInsetTop() - mStatusBarHeight;
+        if (offset <= 0 || mActivity.isFinishing())
+            return true;
+        SimpleImmersion.reapply(mActivity, offset);
+        return false;
+    }
+
+    @TargetApi(Build.VERSION_CODES.P)
+    private void read(WindowInsets insets) {
+        if (insets != mInsets) {
+            mInsets = insets;
+            mCutout = CutoutInsets.of(insets.getDisplayCutout());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.github.xingling.immersionlibrary;
+
+import android.os.Build;
+import android.view.Window;
+import android.view.WindowManager;
+
+import java.lang.reflect.Method;
+
+/**
+ * 收集一次沉浸式设置中对Window的所有修改，commit时合并成尽量少的属性分发
+ * Window attribute transaction.
+ * <p>
+ * Window的addFlags、clearFlags和setAttributes每次调用都会分发onWindowAttributesChanged并可能引起窗口重新布局，
+ * 这里把flag、状态栏导航栏颜色以及厂商属性（flyme的statusBarColor、meizuFlags，miui的extraFlags）集中起来，
+ * flag和厂商属性共用一次分发。
+ */
+final class WindowTransaction {
+
+    private static Method sSetExtraFlags;
+    private static boolean sSetExtraFlagsResolved;
+
+    private final Window mWindow;
+    private int mAddFlags;
+    private int mClearFlags;
+    private boolean mAttributesChanged;
+    private boolean mStatusBarColorSet;
+    private int mStatusBarColor;
+    private boolean mNavigationBarColorSet;
+    private int mNavigationBarColor;
+    private boolean mExtraFlagsSet;
+    private int mExtraFlags;
+    private int mExtraFlagsMask;
+    private int mDispatchCount;
+
+    WindowTransaction(Window window) {
+        mWindow = window;
+    }
+
+    void addFlags(int flags) {
+        mAddFlags |= flags;
+        mClearFlags &= ~flags;
+    }
+
+    void clearFlags(int flags) {
+        mClearFlags |= flags;
+        mAddFlags &= ~flags;
+    }
+
+    void setStatusBarColor(int color) {
+        mStatusBarColorSet = true;
+        mStatusBarColor = color;
+    }
+
+    void setNavigationBarColor(int color) {
+        mNavigationBarColorSet = true;
+        mNavigationBarColor = color;
+    }
+
+    /**
+     * 直接修改window的属性对象（厂商字段），修改后需调用attributesChanged()
+     *
+     * @return the layout params
+     */
+    WindowManager.LayoutParams attributes() {
+        return mWindow.getAttributes();
+    }
+
+    void attributesChanged() {
+        mAttributesChanged = true;
+    }
+
+    /**
+     * miui的setExtraFlags
+     */
+    void setExtraFlags(int flags, int mask) {
+        mExtraFlagsSet = true;
+        mExtraFlags = (mExtraFlags & ~mask) | (flags & mask);
+        mExtraFlagsMask |= mask;
+    }
+
+    Window getWindow() {
+        return mWindow;
+    }
+
+    /**
+     * 提交所有修改
+     *
+     * @return 本次提交引起的window属性分发次数
+     */
+    int commit() {
+        int dispatchCount = 0;
+        WindowManager.LayoutParams attrs = mWindow.getAttributes();
+        int mask = mAddFlags | mClearFlags;
+        if (((attrs.flags & ~mask) | mAddFlags) != attrs.flags) {
+            //厂商字段直接修改在同一个属性对象上，随setFlags一起分发
+            mWindow.setFlags(mAddFlags, mask);
+            dispatchCount++;
+        } else if (mAttributesChanged) {
+            mWindow.setAttributes(attrs);
+            dispatchCount++;
+        }
+        if (mExtraFlagsSet && invokeExtraFlags())
+            dispatchCount++;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            if (mStatusBarColorSet && mWindow.getStatusBarColor() != mStatusBarColor)
+                mWindow.setStatusBarColor(mStatusBarColor);
+            if (mNavigationBarColorSet && mWindow.getNavigationBarColor() != mNavigationBarColor)
+                mWindow.setNavigationBarColor(mNavigationBarColor);
+        }
+        reset();
+        mDispatchCount += dispatchCount;
+        ImmersionMetrics.count(ImmersionMetrics.COUNTER_WINDOW_ATTRIBUTES, dispatchCount);
+        return dispatchCount;
+    }
+
+    /**
+     * 累计的window属性分发次数
+     */
+    int getDispatchCount() {
+        return mDispatchCount;
+    }
+
+    private boolean invokeExtraFlags() {
+        if (!sSetExtraFlagsResolved) {
+            try {
+                sSetExtraFlags = mWindow.getClass().getMethod("setExtraFlags", int.class, int.class);
+            } catch (NoSuchMethodException e) {
+                e.printStackTrace();
+            }
+            sSetExtraFlagsResolved = true;
+        }
+        if (sSetExtraFlags == null)
+            return false;
+        try {
+            ImmersionMetrics.count(ImmersionMetrics.COUNTER_REFLECTION);
+            sSetExtraFlags.invoke(mWindow, mExtraFlags, mExtraFlagsMask);
+            return true;
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+
+    private void reset() {
+        mAddFlags = 0;
+        mClearFlags = 0;
+        mAttributesChanged = false;
+        mStatusBarColorSet = false;
+        mNavigationBarColorSet = false;
+        mExtraFlagsSet = false;
+        mExtraFlags = 0;
+        mExtraFlagsMask = 0;
+    }
+}
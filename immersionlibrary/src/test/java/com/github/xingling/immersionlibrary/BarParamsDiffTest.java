@@ -0,0 +1,124 @@
+package com.github.xingling.immersionlibrary;
+
+import android.graphics.Color;
+import android.os.Build;
+import android.view.View;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 检查BarParams.diff()对每类参数变化给出的修改范围，Fragment栈按这个结果决定只更新颜色、只切换字体还是完整init()
+ * Tests of {@link BarParams#diff(BarParams)}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.O_MR1)
+public class BarParamsDiffTest {
+
+    @Test
+    public void identicalParams() {
+        BarParams params = new BarParams();
+        assertEquals(0, params.diff(params));
+        assertEquals(0, params.diff(params.clone()));
+        assertEquals(0, new BarParams().diff(new BarParams()));
+    }
+
+    @Test
+    public void statusBarColor() {
+        BarParams incoming = new BarParams();
+        incoming.statusBarColor = Color.RED;
+        assertEquals(BarParams.DIFF_STATUS_BAR_COLOR, new BarParams().diff(incoming));
+
+        incoming = new BarParams();
+        incoming.statusBarAlpha = 0.5f;
+        assertEquals(BarParams.DIFF_STATUS_BAR_COLOR, new BarParams().diff(incoming));
+
+        incoming = new BarParams();
+        incoming.statusBarFlag = false;
+        assertEquals(BarParams.DIFF_STATUS_BAR_COLOR, new BarParams().diff(incoming));
+    }
+
+    @Test
+    public void transformViews() {
+        View view = new View(RuntimeEnvironment.application);
+        BarParams outgoing = new BarParams();
+        outgoing.viewMap.put(view, Collections.singletonMap(Color.WHITE, Color.BLACK));
+        BarParams incoming = outgoing.clone();
+        assertEquals(0, outgoing.diff(incoming));
+
+        incoming.viewMap.put(view, Collections.singletonMap(Color.WHITE, Color.RED));
+        assertEquals(BarParams.DIFF_STATUS_BAR_COLOR, outgoing.diff(incoming));
+    }
+
+    @Test
+    public void navigationBarColor() {
+        BarParams incoming = new BarParams();
+        incoming.navigationBarColor = Color.WHITE;
+        assertEquals(BarParams.DIFF_NAVIGATION_BAR_COLOR, new BarParams().diff(incoming));
+
+        incoming = new BarParams();
+        incoming.navigationBarAlpha = 1f;
+        assertEquals(BarParams.DIFF_NAVIGATION_BAR_COLOR, new BarParams().diff(incoming));
+    }
+
+    @Test
+    public void darkFont() {
+        BarParams incoming = new BarParams();
+        incoming.darkFont = true;
+        assertEquals(BarParams.DIFF_DARK_FONT, new BarParams().diff(incoming));
+    }
+
+    @Test
+    public void layout() {
+        BarParams incoming = new BarParams();
+        incoming.fullScreen = true;
+        assertEquals(BarParams.DIFF_LAYOUT, new BarParams().diff(incoming));
+
+        incoming = new BarParams();
+        incoming.barHide = BarHide.FLAG_HIDE_BAR;
+        assertEquals(BarParams.DIFF_LAYOUT, new BarParams().diff(incoming));
+
+        incoming = new BarParams();
+        incoming.fits = true;
+        assertEquals(BarParams.DIFF_LAYOUT, new BarParams().diff(incoming));
+
+        incoming = new BarParams();
+        incoming.keyboardEnable = true;
+        assertEquals(BarParams.DIFF_LAYOUT, new BarParams().diff(incoming));
+
+        incoming = new BarParams();
+        incoming.titleBarView = new View(RuntimeEnvironment.application);
+        assertEquals(BarParams.DIFF_LAYOUT, new BarParams().diff(incoming));
+    }
+
+    @Test
+    public void combinedChanges() {
+        BarParams incoming = new BarParams();
+        incoming.statusBarColor = Color.RED;
+        incoming.navigationBarColor = Color.WHITE;
+        incoming.darkFont = true;
+        assertEquals(BarParams.DIFF_STATUS_BAR_COLOR | BarParams.DIFF_NAVIGATION_BAR_COLOR | BarParams.DIFF_DARK_FONT,
+                new BarParams().diff(incoming));
+
+        incoming.fits = true;
+        assertEquals(BarParams.DIFF_ALL, new BarParams().diff(incoming));
+    }
+
+    @Test
+    public void runtimeStateIgnored() {
+        BarParams incoming = new BarParams();
+        incoming.systemWindows = true;
+        incoming.titleBarHeight = 100;
+        incoming.titleBarPaddingTopHeight = 72;
+        incoming.navigationBarColorTemp = Color.WHITE;
+        incoming.restoredKeyboardHeight = 600;
+        assertEquals(0, new BarParams().diff(incoming));
+    }
+}
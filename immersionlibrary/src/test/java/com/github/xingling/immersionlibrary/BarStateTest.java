@@ -0,0 +1,149 @@
+package com.github.xingling.immersionlibrary;
+
+import android.app.Activity;
+import android.content.res.Configuration;
+import android.graphics.Color;
+import android.os.Build;
+import android.os.Bundle;
+import android.view.WindowManager;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 检查BarState保存后恢复得到相同的参数，屏幕变化和进程重建时不恢复测量结果
+ * Save/restore round trip of {@link BarState}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = Build.VERSION_CODES.O_MR1)
+public class BarStateTest {
+
+    @Test
+    public void roundTrip() {
+        BarParams saved = configured();
+        Configuration configuration = configuration(360, 640, 480);
+        Bundle bundle = new Bundle();
+        BarState.save(bundle, saved, null, configuration);
+
+        BarParams restored = new BarParams();
+        assertTrue(BarState.restore(bundle, restored, configuration));
+        assertEquals(0, saved.diff(restored));
+        assertEquals(saved.fullScreenTemp, restored.fullScreenTemp);
+        assertEquals(saved.navigationBarColorTemp, restored.navigationBarColorTemp);
+        assertEquals(saved.titleBarHeight, restored.titleBarHeight);
+        assertEquals(saved.titleBarPaddingTopHeight, restored.titleBarPaddingTopHeight);
+        //没有KeyboardPatch时不恢复软键盘
+        assertEquals(0, restored.restoredKeyboardHeight);
+        assertEquals(0, restored.restoredKeyboardPadding);
+    }
+
+    @Test
+    public void measurementsDroppedWhenScreenChanges() {
+        BarParams saved = configured();
+        Bundle bundle = new Bundle();
+        BarState.save(bundle, saved, null, configuration(360, 640, 480));
+
+        BarParams rotated = new BarParams();
+        assertTrue(BarState.restore(bundle, rotated, configuration(640, 360, 480)));
+        assertEquals(0, saved.diff(rotated));
+        assertEquals(0, rotated.titleBarHeight);
+        assertEquals(0, rotated.titleBarPaddingTopHeight);
+
+        BarParams density = new BarParams();
+        assertTrue(BarState.restore(bundle, density, configuration(360, 640, 320)));
+        assertEquals(0, density.titleBarHeight);
+    }
+
+    @Test
+    public void missingOrOtherVersionIgnored() {
+        BarParams params = new BarParams();
+        assertFalse(BarState.restore(new Bundle(), params, configuration(360, 640, 480)));
+
+        Bundle bundle = new Bundle();
+        BarState.save(bundle, configured(), null, configuration(360, 640, 480));
+        String key = bundle.keySet().iterator().next();
+        int[] state = bundle.getIntArray(key);
+        state[0]++;
+        bundle.putIntArray(key, state);
+        assertFalse(BarState.restore(bundle, params, configuration(360, 640, 480)));
+        assertEquals(0, new BarParams().diff(params));
+    }
+
+    @Test
+    public void keyboardSavedOnlyForConfigurationChange() throws Exception {
+        TestImmersionActivity activity = Robolectric.setupActivity(TestImmersionActivity.class);
+        SimpleImmersion.with(activity).statusBarColorInt(Color.RED).keyboardEnable(true).init();
+        KeyboardPatch keyboardPatch = (KeyboardPatch) activity.getWindow().getDecorView()
+                .getTag(R.id.immersion_keyboard_patch);
+        setField(KeyboardPatch.class, keyboardPatch, "keyboardHeightPrevious", 600);
+        setField(KeyboardPatch.class, keyboardPatch, "keyboardPaddingPrevious", 456);
+
+        //进程被回收后重建，软键盘已经收起
+        Bundle bundle = new Bundle();
+        SimpleImmersion.saveInstanceState(activity, bundle);
+        BarParams restored = SimpleImmersion.with(activity, bundle).getBarParams();
+        assertEquals(Color.RED, restored.statusBarColor);
+        assertTrue(restored.keyboardEnable);
+        assertEquals(0, restored.restoredKeyboardHeight);
+        assertEquals(0, restored.restoredKeyboardPadding);
+
+        setField(Activity.class, activity, "mChangingConfigurations", true);
+        bundle = new Bundle();
+        SimpleImmersion.saveInstanceState(activity, bundle);
+        restored = SimpleImmersion.with(activity, bundle).getBarParams();
+        assertEquals(600, restored.restoredKeyboardHeight);
+        assertEquals(456, restored.restoredKeyboardPadding);
+    }
+
+    private static void setField(Class<?> clazz, Object target, String name, Object value) throws Exception {
+        Field field = clazz.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    private static BarParams configured() {
+        BarParams params = new BarParams();
+        params.fullScreen = true;
+        params.fullScreenTemp = true;
+        params.darkFont = true;
+        params.autoDarkFont = true;
+        params.statusBarFlag = false;
+        params.fits = true;
+        params.keyboardEnable = true;
+        params.navigationBarWithKitkatEnable = false;
+        params.barHide = BarHide.FLAG_HIDE_NAVIGATION_BAR;
+        params.statusBarColor = Color.RED;
+        params.statusBarColorTransform = Color.BLUE;
+        params.navigationBarColor = Color.WHITE;
+        params.navigationBarColorTransform = Color.GREEN;
+        params.navigationBarColorTemp = Color.WHITE;
+        params.flymeOSStatusBarFontColor = Color.GRAY;
+        params.statusBarColorContentView = Color.CYAN;
+        params.statusBarColorContentViewTransform = Color.MAGENTA;
+        params.statusBarAlpha = 0.3f;
+        params.navigationBarAlpha = 0.4f;
+        params.viewAlpha = 0.5f;
+        params.statusBarContentViewAlpha = 0.6f;
+        params.keyboardMode = WindowManager.LayoutParams.SOFT_INPUT_ADJUST_PAN;
+        params.titleBarHeight = 168;
+        params.titleBarPaddingTopHeight = 72;
+        return params;
+    }
+
+    private static Configuration configuration(int widthDp, int heightDp, int densityDpi) {
+        Configuration configuration = new Configuration();
+        configuration.screenWidthDp = widthDp;
+        configuration.screenHeightDp = heightDp;
+        configuration.densityDpi = densityDpi;
+        return configuration;
+    }
+}
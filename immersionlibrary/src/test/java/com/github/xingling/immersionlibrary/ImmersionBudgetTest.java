@@ -0,0 +1,257 @@
+package com.github.xingling.immersionlibrary;
+
+import android.graphics.Color;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.Window;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.Shadows;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 统计每次init()和每次软键盘事件的requestLayout、decor addView/removeView、window属性分发和内存分配，超出预算时失败
+ * Per-init() and per-keyboard-event cost budgets, run on the JVM through Robolectric.
+ * <p>
+ * Robolectric 3.8最高支持SDK 27，SDK 28需要Robolectric 4和Android Gradle Plugin 3.2
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = {Build.VERSION_CODES.KITKAT, Build.VERSION_CODES.LOLLIPOP, Build.VERSION_CODES.M,
+        Build.VERSION_CODES.O_MR1})
+public class ImmersionBudgetTest {
+
+    /**
+     * 首次init()的预算：KitKat上只添加状态栏和导航栏的占位View，window属性最多分发两次（flags和颜色合并为一次，软键盘模式一次），
+     * requestLayout为请求过布局的View个数（标题栏、contentView和它们的父View）
+     */
+    private static final int FIRST_INIT_DECOR_ADD_VIEW = 2;
+    private static final int FIRST_INIT_WINDOW_ATTRIBUTES = 2;
+    private static final int FIRST_INIT_REQUEST_LAYOUT = 8;
+
+    /**
+     * 参数和屏幕都不变时重复init()不应该触发任何布局和window属性变化
+     */
+    private static final int REPEAT_INIT_REQUEST_LAYOUT = 0;
+    private static final int REPEAT_INIT_WINDOW_ATTRIBUTES = 0;
+    private static final long REPEAT_INIT_ALLOCATED_BYTES = 64 * 1024;
+
+    /**
+     * 软键盘高度不变的布局回调只读取可视区域，不应该修改padding
+     */
+    private static final int KEYBOARD_EVENT_REQUEST_LAYOUT = 0;
+    private static final long KEYBOARD_EVENT_ALLOCATED_BYTES = 1024;
+
+    private TestImmersionActivity mActivity;
+    private CostProbe mProbe;
+
+    @Before
+    public void setUp() {
+        mActivity = Robolectric.setupActivity(TestImmersionActivity.class);
+        mProbe = new CostProbe(mActivity.getWindow());
+        ImmersionMetrics.install(new ImmersionMetrics());
+    }
+
+    @After
+    public void tearDown() {
+        mProbe.detach();
+        ImmersionMetrics.install(null);
+    }
+
+    @Test
+    public void firstInitStaysWithinBudget() {
+        layout();
+        mProbe.begin();
+        SimpleImmersion.with(mActivity)
+                .statusBarColorInt(Color.RED)
+                .titleBar(mActivity.mTitleBar)
+                .init();
+        mProbe.end();
+
+        assertBudget("decor addView", mProbe.addViewCount, FIRST_INIT_DECOR_ADD_VIEW);
+        assertBudget("decor removeView", mProbe.removeViewCount, 0);
+        assertBudget("window attributes", mProbe.attributesCount, FIRST_INIT_WINDOW_ATTRIBUTES);
+        assertBudget("requestLayout", mProbe.requestLayoutCount, FIRST_INIT_REQUEST_LAYOUT);
+    }
+
+    @Test
+    public void repeatInitIsFree() {
+        SimpleImmersion.with(mActivity)
+                .statusBarColorInt(Color.RED)
+                .titleBar(mActivity.mTitleBar)
+                .init();
+        layout();
+        ImmersionMetrics.get().reset();
+        mProbe.begin();
+        SimpleImmersion.with(mActivity)
+                .statusBarColorInt(Color.RED)
+                .titleBar(mActivity.mTitleBar)
+                .init();
+        mProbe.end();
+
+        assertBudget("decor addView", mProbe.addViewCount, 0);
+        assertBudget("decor removeView", mProbe.removeViewCount, 0);
+        assertBudget("window attributes", mProbe.attributesCount, REPEAT_INIT_WINDOW_ATTRIBUTES);
+        assertBudget("requestLayout", mProbe.requestLayoutCount, REPEAT_INIT_REQUEST_LAYOUT);
+        assertBudget("setPadding", ImmersionMetrics.get().getCount(ImmersionMetrics.COUNTER_SET_PADDING), 0);
+        assertBudget("allocated bytes", mProbe.allocatedBytes, REPEAT_INIT_ALLOCATED_BYTES);
+    }
+
+    @Test
+    public void keyboardEventStaysWithinBudget() {
+        SimpleImmersion immersion = SimpleImmersion.with(mActivity).statusBarColorInt(Color.RED);
+        immersion.getBarParams().keyboardEnable = true;
+        immersion.init();
+        layout();
+        View decorView = mActivity.getWindow().getDecorView();
+        //暂停主线程Looper，避免回调中的requestLayout同步触发下一次遍历
+        ShadowLooper.pauseMainLooper();
+        //第一次回调记录当前软键盘高度，之后高度不变
+        decorView.getViewTreeObserver().dispatchOnGlobalLayout();
+        layout();
+        mProbe.begin();
+        decorView.getViewTreeObserver().dispatchOnGlobalLayout();
+        mProbe.end();
+        ShadowLooper.unPauseMainLooper();
+
+        assertBudget("decor addView", mProbe.addViewCount, 0);
+        assertBudget("window attributes", mProbe.attributesCount, 0);
+        assertBudget("requestLayout", mProbe.requestLayoutCount, KEYBOARD_EVENT_REQUEST_LAYOUT);
+        assertBudget("allocated bytes", mProbe.allocatedBytes, KEYBOARD_EVENT_ALLOCATED_BYTES);
+    }
+
+    /**
+     * 完成一次measure和layout，清除之前的布局请求
+     */
+    private void layout() {
+        View decorView = mActivity.getWindow().getDecorView();
+        decorView.measure(View.MeasureSpec.makeMeasureSpec(480, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(800, View.MeasureSpec.EXACTLY));
+        decorView.layout(0, 0, 480, 800);
+    }
+
+    private static void assertBudget(String name, long actual, long budget) {
+        assertTrue(name + "超出预算: " + actual + " > " + budget + " (SDK " + Build.VERSION.SDK_INT + ")",
+                actual <= budget);
+    }
+
+    /**
+     * 通过Robolectric记录的didRequestLayout统计请求过布局的View个数，包括向上传递到的父View，
+     * 通过decor的OnHierarchyChangeListener统计addView/removeView，
+     * 通过代理Window.Callback统计onWindowAttributesChanged，
+     * 通过com.sun.management.ThreadMXBean统计当前线程分配的字节数
+     */
+    private static final class CostProbe implements ViewGroup.OnHierarchyChangeListener, InvocationHandler {
+
+        private final Window mWindow;
+        private final Window.Callback mCallback;
+        private boolean mRecording;
+        private long mAllocatedBefore;
+
+        int addViewCount;
+        int removeViewCount;
+        int attributesCount;
+        int requestLayoutCount;
+        long allocatedBytes;
+
+        CostProbe(Window window) {
+            mWindow = window;
+            mCallback = window.getCallback();
+            ((ViewGroup) window.getDecorView()).setOnHierarchyChangeListener(this);
+            window.setCallback((Window.Callback) Proxy.newProxyInstance(Window.Callback.class.getClassLoader(),
+                    new Class<?>[]{Window.Callback.class}, this));
+        }
+
+        void begin() {
+            addViewCount = 0;
+            removeViewCount = 0;
+            attributesCount = 0;
+            resetRequestLayout(mWindow.getDecorView());
+            mRecording = true;
+            mAllocatedBefore = allocatedBytes();
+        }
+
+        void end() {
+            long allocatedAfter = allocatedBytes();
+            mRecording = false;
+            requestLayoutCount = countRequestLayout(mWindow.getDecorView());
+            allocatedBytes = mAllocatedBefore < 0 || allocatedAfter < 0 ? 0 : allocatedAfter - mAllocatedBefore;
+        }
+
+        void detach() {
+            ((ViewGroup) mWindow.getDecorView()).setOnHierarchyChangeListener(null);
+            mWindow.setCallback(mCallback);
+        }
+
+        @Override
+        public void onChildViewAdded(View parent, View child) {
+            if (mRecording)
+                addViewCount++;
+        }
+
+        @Override
+        public void onChildViewRemoved(View parent, View child) {
+            if (mRecording)
+                removeViewCount++;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (mRecording && "onWindowAttributesChanged".equals(method.getName()))
+                attributesCount++;
+            try {
+                return method.invoke(mCallback, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private static void resetRequestLayout(View view) {
+            Shadows.shadowOf(view).setDidRequestLayout(false);
+            if (view instanceof ViewGroup) {
+                ViewGroup group = (ViewGroup) view;
+                for (int i = 0; i < group.getChildCount(); i++) {
+                    resetRequestLayout(group.getChildAt(i));
+                }
+            }
+        }
+
+        private static int countRequestLayout(View view) {
+            int count = Shadows.shadowOf(view).didRequestLayout() ? 1 : 0;
+            if (view instanceof ViewGroup) {
+                ViewGroup group = (ViewGroup) view;
+                for (int i = 0; i < group.getChildCount(); i++) {
+                    count += countRequestLayout(group.getChildAt(i));
+                }
+            }
+            return count;
+        }
+
+        /**
+         * 不支持线程内存分配统计的JVM返回-1，此时不检查分配预算
+         */
+        private static long allocatedBytes() {
+            java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (!(bean instanceof com.sun.management.ThreadMXBean))
+                return -1;
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (!sunBean.isThreadAllocatedMemorySupported() || !sunBean.isThreadAllocatedMemoryEnabled())
+                return -1;
+            return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+}
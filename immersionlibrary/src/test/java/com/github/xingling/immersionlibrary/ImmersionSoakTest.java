@@ -0,0 +1,209 @@
+package com.github.xingling.immersionlibrary;
+
+import android.app.Activity;
+import android.graphics.Color;
+import android.os.Build;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentActivity;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowAccessibilityManager;
+import org.robolectric.shadows.ShadowWindowManagerImpl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 反复创建和销毁Activity、Fragment并调用init()，GC后检查SimpleImmersion、BarParams、KeyboardPatch和Activity没有被持有
+ * Soak test for instances retained across thousands of init()/destroy() cycles.
+ * <p>
+ * 耗时较长，默认不运行，通过gradle test -PimmersionSoakCycles=10000运行；每个测试结束后输出存活对象数和堆内存增长
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = {Build.VERSION_CODES.KITKAT, Build.VERSION_CODES.O_MR1})
+public class ImmersionSoakTest {
+
+    private static final int CYCLES = Integer.getInteger("immersion.soak.cycles", 10000);
+    private static final int WARMUP_CYCLES = 50;
+
+    /**
+     * 循环结束后每种对象最多允许存活的个数，最后一次循环的对象可能还被Robolectric的主线程Looper引用
+     */
+    private static final int RETAINED_BUDGET = 2;
+
+    /**
+     * 平均每次循环允许的堆内存增长，包括Robolectric模拟native对象时不释放的内存（每次循环约20KB）
+     */
+    private static final long RETAINED_HEAP_PER_CYCLE_BUDGET = 64 * 1024;
+
+    /**
+     * 统计行的前缀，与build.gradle中的onOutput过滤一致
+     */
+    private static final String REPORT_PREFIX = "[immersion-soak] ";
+
+    @Test
+    public void activityCyclesDoNotRetainInstances() {
+        soak(new Cycle() {
+            @Override
+            public void run(int cycle, RetainedCounter counter) {
+                ActivityController<TestImmersionActivity> controller =
+                        Robolectric.buildActivity(TestImmersionActivity.class).setup();
+                TestImmersionActivity activity = controller.get();
+                SimpleImmersion immersion = SimpleImmersion.with(activity)
+                        .statusBarColorInt(Color.RED)
+                        .titleBar(activity.mTitleBar)
+                        .keyboardEnable(true);
+                immersion.init();
+                //重复init()不应该注册新的监听
+                SimpleImmersion.with(activity).statusBarColorInt(Color.BLUE).keyboardEnable(true).init();
+                counter.track(activity, immersion);
+                immersion.destroy();
+                finish(controller);
+            }
+        });
+    }
+
+    @Test
+    public void fragmentCyclesDoNotRetainInstances() {
+        ActivityController<FragmentActivity> controller = Robolectric.buildActivity(FragmentActivity.class).setup();
+        final FragmentActivity activity = controller.get();
+        soak(new Cycle() {
+            @Override
+            public void run(int cycle, RetainedCounter counter) {
+                Fragment fragment = new Fragment();
+                activity.getSupportFragmentManager().beginTransaction().add(fragment, "soak").commitNow();
+                SimpleImmersion immersion = SimpleImmersion.with(activity, fragment)
+                        .statusBarColorInt(cycle % 2 == 0 ? Color.RED : Color.BLUE)
+                        .keyboardEnable(true);
+                immersion.init();
+                counter.track(null, immersion);
+                counter.trackFragment(fragment);
+                activity.getSupportFragmentManager().beginTransaction().remove(fragment).commitNow();
+            }
+        });
+        SimpleImmersion.with(activity).destroy();
+        finish(controller);
+    }
+
+    /**
+     * 先预热，类加载和资源缓存不计入堆内存增长，再运行CYCLES次循环
+     */
+    private static void soak(Cycle cycle) {
+        RetainedCounter warmup = new RetainedCounter();
+        for (int i = 0; i < WARMUP_CYCLES; i++) {
+            cycle.run(i, warmup);
+        }
+        RetainedCounter counter = new RetainedCounter();
+        for (int i = 0; i < CYCLES; i++) {
+            cycle.run(i, counter);
+        }
+        counter.assertBounded();
+    }
+
+    /**
+     * 销毁Activity并移除它的窗口。Robolectric 3.8销毁Activity时不会移除窗口，
+     * WindowManagerGlobal、ShadowWindowManagerImpl和ShadowAccessibilityManager会一直持有每个Activity的DecorView，
+     * 这里手动释放，使统计结果只反映SimpleImmersion自身持有的对象
+     */
+    private static void finish(ActivityController<? extends Activity> controller) {
+        Activity activity = controller.pause().stop().destroy().get();
+        activity.getWindowManager().removeViewImmediate(activity.getWindow().getDecorView());
+        ShadowWindowManagerImpl.reset();
+        ShadowAccessibilityManager.reset();
+    }
+
+    /**
+     * 反复GC直到一个哨兵弱引用被回收，再读取已使用的堆内存
+     */
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            WeakReference<Object> sentinel = new WeakReference<>(new Object());
+            while (sentinel.get() != null) {
+                System.gc();
+                System.runFinalization();
+            }
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private interface Cycle {
+        /**
+         * @param cycle   第几次循环
+         * @param counter 记录本次循环创建的对象
+         */
+        void run(int cycle, RetainedCounter counter);
+    }
+
+    /**
+     * 用弱引用记录每次循环创建的对象，GC后统计仍然存活的不同实例的个数
+     */
+    private static final class RetainedCounter {
+
+        private final List<WeakReference<Object>> mActivities = new ArrayList<>();
+        private final List<WeakReference<Object>> mFragments = new ArrayList<>();
+        private final List<WeakReference<Object>> mImmersions = new ArrayList<>();
+        private final List<WeakReference<Object>> mBarParams = new ArrayList<>();
+        private final List<WeakReference<Object>> mKeyboardPatches = new ArrayList<>();
+        private final long mHeapBefore;
+
+        RetainedCounter() {
+            mHeapBefore = usedHeapAfterGc();
+        }
+
+        void track(Activity activity, SimpleImmersion immersion) {
+            if (activity != null)
+                mActivities.add(new WeakReference<Object>(activity));
+            mImmersions.add(new WeakReference<Object>(immersion));
+            mBarParams.add(new WeakReference<Object>(immersion.getBarParams()));
+            if (immersion.getBarParams().keyboardPatch != null)
+                mKeyboardPatches.add(new WeakReference<Object>(immersion.getBarParams().keyboardPatch));
+        }
+
+        void trackFragment(Fragment fragment) {
+            mFragments.add(new WeakReference<Object>(fragment));
+        }
+
+        void assertBounded() {
+            long heapDelta = usedHeapAfterGc() - mHeapBefore;
+            String report = "SDK " + Build.VERSION.SDK_INT + " after " + CYCLES + " cycles:"
+                    + " Activity=" + alive(mActivities)
+                    + " Fragment=" + alive(mFragments)
+                    + " SimpleImmersion=" + alive(mImmersions)
+                    + " BarParams=" + alive(mBarParams)
+                    + " KeyboardPatch=" + alive(mKeyboardPatches)
+                    + " retainedHeapDelta=" + heapDelta + "B (" + heapDelta / CYCLES + "B/cycle)";
+            assertTrue(report, alive(mActivities) <= RETAINED_BUDGET);
+            assertTrue(report, alive(mFragments) <= RETAINED_BUDGET);
+            assertTrue(report, alive(mImmersions) <= RETAINED_BUDGET);
+            assertTrue(report, alive(mBarParams) <= RETAINED_BUDGET);
+            assertTrue(report, alive(mKeyboardPatches) <= RETAINED_BUDGET);
+            assertTrue(report, heapDelta <= RETAINED_HEAP_PER_CYCLE_BUDGET * CYCLES);
+            //通过后也输出统计，gradle按REPORT_PREFIX把这一行作为测试日志输出，同时保存在测试报告的标准输出中
+            System.out.println(REPORT_PREFIX + report);
+        }
+
+        /**
+         * 同一个窗口的KeyboardPatch会被复用，按实例去重后计数
+         */
+        private static int alive(List<WeakReference<Object>> references) {
+            Map<Object, Boolean> instances = new IdentityHashMap<>();
+            for (WeakReference<Object> reference : references) {
+                Object instance = reference.get();
+                if (instance != null)
+                    instances.put(instance, Boolean.TRUE);
+            }
+            return instances.size();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.github.xingling.immersionlibrary;
+
+import android.app.Activity;
+import android.os.Bundle;
+import android.view.ViewGroup;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+/**
+ * 测试用的Activity，布局为固定高度的标题栏加一个输入框
+ * Activity with a fixed-height title bar and an input field, used by the Robolectric suites.
+ */
+public class TestImmersionActivity extends Activity {
+
+    static final int TITLE_BAR_HEIGHT = 96;
+
+    TextView mTitleBar;
+    EditText mInput;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        LinearLayout root = new LinearLayout(this);
+        root.setOrientation(LinearLayout.VERTICAL);
+        mTitleBar = new TextView(this);
+        mTitleBar.setId(android.R.id.title);
+        root.addView(mTitleBar, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, TITLE_BAR_HEIGHT));
+        mInput = new EditText(this);
+        root.addView(mInput, new LinearLayout.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT,
+                ViewGroup.LayoutParams.WRAP_CONTENT));
+        setContentView(root);
+    }
+}